@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler, which reports the bytes allocated per operation ({@code gc.alloc.rate.norm})
+ * next to the timings. Accepts the same arguments as JMH's own main class, e.g. a regular expression which selects the
+ * benchmarks to run:
+ * <p>
+ * {@code java -jar jisolate-benchmarks/target/benchmarks.jar ThreadLocalProperties}
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+
+    /**
+     * Runs the benchmarks of a single class with the GC profiler.
+     */
+    public static void run(Class<?> benchmarkClass) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(benchmarkClass.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.benchmarks.BenchmarkMain;
+import org.assertj.core.api.Assertions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Measures how the time to load all classes of a JAR scales with the number of threads which share one
+ * {@link ChildFirstUrlClassLoader}. Each thread loads a distinct subset of the classes.
+ * <p>
+ * Run via {@link #main(String[])} or
+ * {@code java -jar jisolate-benchmarks/target/benchmarks.jar ChildFirstUrlClassLoaderBenchmark}
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChildFirstUrlClassLoaderBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ChildFirstUrlClassLoader classLoader;
+    private List<String> classNames;
+    private ExecutorService executor;
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkMain.run(ChildFirstUrlClassLoaderBenchmark.class);
+    }
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        File jar = new File(Assertions.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        try (JarFile jarFile = new JarFile(jar)) {
+            classNames = jarFile.stream()
+                    .map(e -> e.getName())
+                    .filter(n -> n.endsWith(".class") && !n.contains("-"))
+                    .map(n -> n.substring(0, n.length() - ".class".length()).replace('/', '.'))
+                    .collect(toList());
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        classLoader = new ChildFirstUrlClassLoader(UrlProvider.getClassPathUrls(emptyList()),
+                getClass().getClassLoader());
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws IOException {
+        classLoader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int loadClasses() throws Exception {
+        List<Future<Integer>> loadedClassCounts = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int offset = i;
+            loadedClassCounts.add(executor.submit(() -> loadClasses(offset)));
+        }
+
+        int loadedClasses = 0;
+        for (Future<Integer> loadedClassCount : loadedClassCounts)
+            loadedClasses += loadedClassCount.get();
+        return loadedClasses;
+    }
+
+    private int loadClasses(int offset) {
+        int loadedClasses = 0;
+        for (int i = offset; i < classNames.size(); i += threads) {
+            try {
+                classLoader.loadClass(classNames.get(i));
+                loadedClasses++;
+            } catch (ClassNotFoundException | LinkageError e) {
+                // Classes with optional dependencies may not be loadable
+            }
+        }
+        return loadedClasses;
+    }
+}
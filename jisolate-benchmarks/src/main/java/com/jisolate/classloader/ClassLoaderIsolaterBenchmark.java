@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.Jisolate;
+import com.jisolate.benchmarks.BenchmarkMain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of class loader isolations: a cold invocation creates a class loader, loads the isolated class
+ * and tears both down again, whereas a warm invocation reuses the class loader of an {@link IsolationSession}. A
+ * templated invocation takes a fresh class loader which an {@link IsolationTemplate} prepared in the background.
+ * <p>
+ * Run via {@link #main(String[])} or
+ * {@code java -jar jisolate-benchmarks/target/benchmarks.jar ClassLoaderIsolaterBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassLoaderIsolaterBenchmark {
+
+    private ClassLoaderIsolater.Builder isolater;
+    private IsolationSession session;
+
+    /**
+     * Template whose sessions are all prepared before each invocation, i.e. which isn't drained faster than it is
+     * replenished.
+     */
+    @State(Scope.Benchmark)
+    public static class Template {
+        private IsolationTemplate template;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            template = Jisolate.classLoaderIsolation()
+                    .withIsolatableClass(NoOpIsolatable.class)
+                    .openTemplate(4);
+        }
+
+        @Setup(Level.Invocation)
+        public void awaitPreparedSessions() throws InterruptedException {
+            while (template.getReadyCount() < 4)
+                Thread.sleep(1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            template.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkMain.run(ClassLoaderIsolaterBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        isolater = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(NoOpIsolatable.class)
+                .withIsolatableArguments("foo");
+        session = isolater.openSession();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public Object cold() throws ExecutionException, InterruptedException {
+        return isolater.isolateAsync().get();
+    }
+
+    @Benchmark
+    public Object warm() {
+        return session.call("foo");
+    }
+
+    @Benchmark
+    public Object templated(Template template) {
+        return template.template.call("foo");
+    }
+}
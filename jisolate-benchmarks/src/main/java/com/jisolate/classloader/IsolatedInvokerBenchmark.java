@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+import com.jisolate.benchmarks.BenchmarkMain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of an isolated {@code call(Object...)} invocation, i.e. instantiating the isolated class and
+ * invoking its entry point, without any executor hand-off.
+ * <p>
+ * Run via {@link #main(String[])} or
+ * {@code java -jar jisolate-benchmarks/target/benchmarks.jar IsolatedInvokerBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IsolatedInvokerBenchmark {
+
+    private final Object[] args = {"foo"};
+    private IsolatedInvoker invoker;
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkMain.run(IsolatedInvokerBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() throws ClassNotFoundException {
+        invoker = IsolatedInvoker.load(getClass().getClassLoader(), NoOpIsolatable.class.getName());
+    }
+
+    @Benchmark
+    public Object invokeCall() {
+        return invoker.invokeCall(args);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.benchmarks.BenchmarkMain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to resolve the URLs of the class path for an isolated class loader, depending on the
+ * number of JARs to exclude.
+ * <p>
+ * Run via {@link #main(String[])} or {@code java -jar jisolate-benchmarks/target/benchmarks.jar UrlProviderBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlProviderBenchmark {
+
+    @Param({"0", "10", "1000"})
+    public int exclusions;
+
+    private List<String> jarsToExclude;
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkMain.run(UrlProviderBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        jarsToExclude = new ArrayList<>(exclusions);
+        for (int i = 0; i < exclusions; i++)
+            jarsToExclude.add(i % 2 == 0 ? "excluded-" + i : "glob:excluded-" + i + "-*.jar");
+    }
+
+    @Benchmark
+    public URL[] getClassPathUrls() {
+        return UrlProvider.getClassPathUrls(jarsToExclude);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.Jisolate;
+import com.jisolate.benchmarks.BenchmarkMain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from spawning a child JVM until its main method runs, with the full and with a minimal class path.
+ * <p>
+ * Run via {@link #main(String[])} or {@code java -jar jisolate-benchmarks/target/benchmarks.jar JvmIsolaterBenchmark}
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JvmIsolaterBenchmark {
+
+    @Param({"false", "true"})
+    public boolean minimalClassPath;
+
+    private JvmIsolater.Builder isolater;
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkMain.run(JvmIsolaterBenchmark.class);
+    }
+
+    @Setup
+    public void setUp() {
+        isolater = Jisolate.jvmIsolation()
+                .withMainClass(ReadyMain.class)
+                .withMinimalClassPath(minimalClassPath);
+    }
+
+    @Benchmark
+    public Object spawnUntilReady() throws InterruptedException {
+        try (JvmIsolate isolate = isolater.isolate()) {
+            Object event = isolate.events().findFirst().orElse(null);
+            isolate.waitFor();
+            return event;
+        }
+    }
+}
@@ -13,28 +13,14 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.jisolate.jvm;
 
-import java.io.Closeable;
-
-public class JvmIsolate implements Closeable {
-
-    private final Process process;
-
-    JvmIsolate(Process process) {
-        this.process = process;
-    }
-
-    public void close() {
-        process.destroy();
-    }
+/**
+ * Main class which reports to its parent that it is ready and exits.
+ */
+public class ReadyMain {
 
-    public int waitFor() {
-        try {
-            return process.waitFor();
-        } catch (Exception e) {
-            throw new RuntimeException("Waiting failed for process " + process, e);
-        }
+    public static void main(String[] args) {
+        ParentChannel.sendEvent("ready");
     }
 }
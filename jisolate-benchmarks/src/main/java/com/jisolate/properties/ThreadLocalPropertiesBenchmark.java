@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.properties;
+
+import com.jisolate.benchmarks.BenchmarkMain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares system property lookups via the plain system properties with those via {@link ThreadLocalProperties},
+ * both before and after a thread has set a local property.
+ * <p>
+ * Run via {@link #main(String[])} or {@code java -jar jisolate-benchmarks/target/benchmarks.jar ThreadLocalPropertiesBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ThreadLocalPropertiesBenchmark {
+
+    private static final String KEY = "java.version";
+
+    @State(Scope.Benchmark)
+    public static class Plain {
+        private final Properties properties = System.getProperties();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Unset {
+        private final ThreadLocalProperties properties = new ThreadLocalProperties(System.getProperties());
+    }
+
+    @State(Scope.Benchmark)
+    public static class SetByOtherThread {
+        private final ThreadLocalProperties properties = new ThreadLocalProperties(System.getProperties());
+
+        @Setup
+        public void setUp() throws InterruptedException {
+            Thread thread = new Thread(() -> properties.setProperty(KEY, "other"));
+            thread.start();
+            thread.join();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SetByThisThread {
+        private final ThreadLocalProperties properties = new ThreadLocalProperties(System.getProperties());
+
+        @Setup
+        public void setUp() {
+            properties.setProperty(KEY, "local");
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkMain.run(ThreadLocalPropertiesBenchmark.class);
+    }
+
+    @Benchmark
+    public String plainProperties(Plain state) {
+        return state.properties.getProperty(KEY);
+    }
+
+    @Benchmark
+    public String threadLocalPropertiesUnset(Unset state) {
+        return state.properties.getProperty(KEY);
+    }
+
+    @Benchmark
+    public String threadLocalPropertiesSetByOtherThread(SetByOtherThread state) {
+        return state.properties.getProperty(KEY);
+    }
+
+    @Benchmark
+    public String threadLocalPropertiesSetByThisThread(SetByThisThread state) {
+        return state.properties.getProperty(KEY);
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate;
+
+import com.jisolate.classloader.ClassLoaderIsolater;
+import com.jisolate.jvm.JvmIsolater;
+import com.jisolate.util.IsolationExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Isolater which runs invocations in the cheapest isolate that works: a class loader isolate, unless the isolatable
+ * class has been found to need a child JVM.
+ * <p>
+ * Class loader invocations run on the isolater's own threads, which measure their latency, CPU time and allocated
+ * bytes. Once the average of any of these exceeds its budget, further invocations are escalated to child JVMs. An
+ * invocation which fails in a class loader isolate in a way that suggests the isolation is to blame, e.g. with a
+ * {@link LinkageError}, is retried in a child JVM; if it succeeds there, further invocations are escalated as well.
+ * <p>
+ * Measurements only cover the invoking thread, not threads which the isolated code starts.
+ */
+public class AdaptiveIsolater implements Isolater {
+
+    /**
+     * Isolation approach used for an invocation.
+     */
+    public enum Route {
+        CLASS_LOADER, JVM
+    }
+
+    public static class Builder {
+        private final ClassLoaderIsolater.Builder classLoaderIsolation = Jisolate.classLoaderIsolation();
+        private final JvmIsolater.Builder jvmIsolation = Jisolate.jvmIsolation();
+        private final AdaptiveIsolater template = new AdaptiveIsolater();
+
+        /**
+         * Returns a new isolater with the current configuration. Each isolater decides on its own route.
+         */
+        public AdaptiveIsolater build() {
+            // Runs class loader isolations on the invoking thread, which is one of the adaptive isolater's threads
+            return new AdaptiveIsolater(template, classLoaderIsolation.withExecutor(Runnable::run).build(),
+                    jvmIsolation.build());
+        }
+
+        public Builder withIsolatableClass(Class<?> isolatableClass) {
+            classLoaderIsolation.withIsolatableClass(isolatableClass);
+            jvmIsolation.withMainClass(isolatableClass);
+            return this;
+        }
+
+        /**
+         * Configures class loader isolation, e.g. its shared JARs. Its executor is ignored.
+         */
+        public Builder withClassLoaderIsolation(Consumer<ClassLoaderIsolater.Builder> configurer) {
+            configurer.accept(classLoaderIsolation);
+            return this;
+        }
+
+        /**
+         * Configures JVM isolation, e.g. its resource limits.
+         */
+        public Builder withJvmIsolation(Consumer<JvmIsolater.Builder> configurer) {
+            configurer.accept(jvmIsolation);
+            return this;
+        }
+
+        /**
+         * Average wall-clock time of a class loader invocation above which invocations are escalated. Unlimited by
+         * default.
+         */
+        public Builder withLatencyBudget(Duration latencyBudget) {
+            template.latencyBudgetNanos = latencyBudget.toNanos();
+            return this;
+        }
+
+        /**
+         * Average CPU time of a class loader invocation above which invocations are escalated. Unlimited by default.
+         */
+        public Builder withCpuTimeBudget(Duration cpuTimeBudget) {
+            template.cpuTimeBudgetNanos = cpuTimeBudget.toNanos();
+            return this;
+        }
+
+        /**
+         * Average number of bytes allocated by a class loader invocation above which invocations are escalated.
+         * Unlimited by default.
+         */
+        public Builder withAllocationBudget(long allocationBudgetBytes) {
+            template.allocationBudgetBytes = allocationBudgetBytes;
+            return this;
+        }
+
+        /**
+         * Decides whether a failed class loader invocation is retried in a child JVM. By default, this is the case if
+         * the failure was caused by a {@link LinkageError} or a {@link ClassCastException}, which are typical of
+         * classes that don't work when loaded more than once.
+         */
+        public Builder withEscalationPredicate(Predicate<Throwable> escalationPredicate) {
+            template.escalationPredicate = requireNonNull(escalationPredicate);
+            return this;
+        }
+
+        /**
+         * Executor which runs class loader invocations. It should use platform threads, since the CPU time and
+         * allocations of virtual threads can't be measured. By default, a shared executor whose number of threads is
+         * {@link IsolationExecutors#getDefaultParallelism() bounded} is used.
+         */
+        public Builder withExecutor(Executor executor) {
+            template.executor = requireNonNull(executor);
+            return this;
+        }
+    }
+
+    /**
+     * Snapshot of the invocations performed by an adaptive isolater.
+     */
+    public static class Statistics {
+        private final long averageAllocatedBytes;
+        private final long averageClassLoaderLatencyNanos;
+        private final long averageCpuTimeNanos;
+        private final long averageJvmLatencyNanos;
+        private final long classLoaderInvocations;
+        private final String escalationReason;
+        private final long jvmInvocations;
+        private final Route route;
+
+        Statistics(Route route, String escalationReason, long classLoaderInvocations, long jvmInvocations,
+                   long averageClassLoaderLatencyNanos, long averageJvmLatencyNanos, long averageCpuTimeNanos,
+                   long averageAllocatedBytes) {
+            this.route = route;
+            this.escalationReason = escalationReason;
+            this.classLoaderInvocations = classLoaderInvocations;
+            this.jvmInvocations = jvmInvocations;
+            this.averageClassLoaderLatencyNanos = averageClassLoaderLatencyNanos;
+            this.averageJvmLatencyNanos = averageJvmLatencyNanos;
+            this.averageCpuTimeNanos = averageCpuTimeNanos;
+            this.averageAllocatedBytes = averageAllocatedBytes;
+        }
+
+        /**
+         * Route of future invocations.
+         */
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * Why invocations were escalated to child JVMs, or {@code null} if they weren't.
+         */
+        public String getEscalationReason() {
+            return escalationReason;
+        }
+
+        public long getClassLoaderInvocations() {
+            return classLoaderInvocations;
+        }
+
+        public long getJvmInvocations() {
+            return jvmInvocations;
+        }
+
+        public long getAverageLatency(Route route, TimeUnit unit) {
+            return unit.convert(route == Route.JVM ? averageJvmLatencyNanos : averageClassLoaderLatencyNanos,
+                    TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Average CPU time of a class loader invocation, or -1 if it can't be measured.
+         */
+        public long getAverageCpuTime(TimeUnit unit) {
+            return averageCpuTimeNanos < 0 ? -1 : unit.convert(averageCpuTimeNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Average number of bytes allocated by a class loader invocation, or -1 if it can't be measured.
+         */
+        public long getAverageAllocatedBytes() {
+            return averageAllocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics{route=%s, classLoaderInvocations=%d, jvmInvocations=%d, "
+                            + "averageClassLoaderLatency=%dus, averageJvmLatency=%dus, averageCpuTime=%dus, "
+                            + "averageAllocatedBytes=%d, escalationReason=%s}", route, classLoaderInvocations,
+                    jvmInvocations, getAverageLatency(Route.CLASS_LOADER, TimeUnit.MICROSECONDS),
+                    getAverageLatency(Route.JVM, TimeUnit.MICROSECONDS), getAverageCpuTime(TimeUnit.MICROSECONDS),
+                    averageAllocatedBytes, escalationReason);
+        }
+    }
+
+    /**
+     * Exponentially weighted moving average which starts at its first sample, or -1 until there is one.
+     */
+    private static class Average {
+        private static final double WEIGHT = 0.2;
+        private double value = -1;
+
+        synchronized void add(long sample) {
+            value = value < 0 ? sample : value + WEIGHT * (sample - value);
+        }
+
+        synchronized long get() {
+            return (long) value;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveIsolater.class);
+    private static final ExecutorService defaultExecutor = IsolationExecutors.newBoundedPlatformExecutor(
+            "AdaptiveIsolater-", IsolationExecutors.getDefaultParallelism());
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final Average allocatedBytes = new Average();
+    private final Average classLoaderLatency = new Average();
+    private final LongAdder classLoaderInvocations = new LongAdder();
+    private final Average cpuTime = new Average();
+    private final Average jvmLatency = new Average();
+    private final LongAdder jvmInvocations = new LongAdder();
+    private long allocationBudgetBytes = Long.MAX_VALUE;
+    private ClassLoaderIsolater classLoaderIsolater;
+    private long cpuTimeBudgetNanos = Long.MAX_VALUE;
+    private Predicate<Throwable> escalationPredicate = AdaptiveIsolater::isCausedByIsolation;
+    private volatile String escalationReason;
+    private Executor executor = defaultExecutor;
+    private JvmIsolater jvmIsolater;
+    private long latencyBudgetNanos = Long.MAX_VALUE;
+    private volatile Route route = Route.CLASS_LOADER;
+
+    private AdaptiveIsolater() {
+    }
+
+    private AdaptiveIsolater(AdaptiveIsolater template, ClassLoaderIsolater classLoaderIsolater,
+                             JvmIsolater jvmIsolater) {
+        this.classLoaderIsolater = classLoaderIsolater;
+        this.jvmIsolater = jvmIsolater;
+        allocationBudgetBytes = template.allocationBudgetBytes;
+        cpuTimeBudgetNanos = template.cpuTimeBudgetNanos;
+        escalationPredicate = template.escalationPredicate;
+        executor = template.executor;
+        latencyBudgetNanos = template.latencyBudgetNanos;
+    }
+
+    @Override
+    public CompletableFuture<Object> invoke(Object... arguments) {
+        if (route == Route.JVM)
+            return invokeInJvm(arguments);
+        return CompletableFuture.supplyAsync(() -> invokeInClassLoader(arguments), executor)
+                .thenCompose(Function.identity());
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(route, escalationReason, classLoaderInvocations.sum(), jvmInvocations.sum(),
+                classLoaderLatency.get(), jvmLatency.get(), cpuTime.get(), allocatedBytes.get());
+    }
+
+    private CompletableFuture<Object> invokeInClassLoader(Object[] arguments) {
+        long startNanos = System.nanoTime();
+        long startCpuTimeNanos = getCurrentThreadCpuTime();
+        long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+        Object result;
+        try {
+            result = classLoaderIsolater.invoke(arguments).join();
+        } catch (CompletionException e) {
+            Throwable failure = e.getCause();
+            if (!escalationPredicate.test(failure))
+                throw e;
+            log.info("Retrying failed class loader isolation in child JVM", failure);
+            return invokeInJvm(arguments).handle((jvmResult, t) -> {
+                if (t != null) {
+                    // The invocation doesn't work in a child JVM either, so the class loader isn't to blame
+                    failure.addSuppressed(t);
+                    throw new CompletionException(failure);
+                }
+                escalate("Class loader isolation failed with " + getRootCause(failure));
+                return jvmResult;
+            });
+        } finally {
+            classLoaderInvocations.increment();
+        }
+
+        long latencyNanos = System.nanoTime() - startNanos;
+        classLoaderLatency.add(latencyNanos);
+        if (latencyNanos > latencyBudgetNanos && classLoaderLatency.get() > latencyBudgetNanos)
+            escalate("Average latency exceeded " + latencyBudgetNanos + "ns");
+        if (startCpuTimeNanos >= 0) {
+            cpuTime.add(getCurrentThreadCpuTime() - startCpuTimeNanos);
+            if (cpuTime.get() > cpuTimeBudgetNanos)
+                escalate("Average CPU time exceeded " + cpuTimeBudgetNanos + "ns");
+        }
+        if (startAllocatedBytes >= 0) {
+            allocatedBytes.add(getCurrentThreadAllocatedBytes() - startAllocatedBytes);
+            if (allocatedBytes.get() > allocationBudgetBytes)
+                escalate("Average allocations exceeded " + allocationBudgetBytes + " bytes");
+        }
+        return CompletableFuture.completedFuture(result);
+    }
+
+    private CompletableFuture<Object> invokeInJvm(Object[] arguments) {
+        long startNanos = System.nanoTime();
+        return jvmIsolater.invoke(arguments).whenComplete((result, t) -> {
+            jvmInvocations.increment();
+            jvmLatency.add(System.nanoTime() - startNanos);
+        });
+    }
+
+    private void escalate(String reason) {
+        if (route != Route.JVM) {
+            escalationReason = reason;
+            route = Route.JVM;
+            log.info("Escalating further invocations to child JVMs: {}", reason);
+        }
+    }
+
+    private static boolean isCausedByIsolation(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause())
+            if (t instanceof LinkageError || t instanceof ClassCastException)
+                return true;
+        return false;
+    }
+
+    private static Throwable getRootCause(Throwable failure) {
+        Throwable rootCause = failure;
+        while (rootCause.getCause() != null && rootCause.getCause() != rootCause)
+            rootCause = rootCause.getCause();
+        return rootCause;
+    }
+
+    private static long getCurrentThreadCpuTime() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long getCurrentThreadAllocatedBytes() {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled())
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Common contract of all isolation approaches: each invocation runs the isolatable class in a new isolate, i.e. its
+ * static {@code main(String[])} method if it has one, otherwise the {@code call(Object...)} method of a new instance.
+ */
+public interface Isolater {
+
+    /**
+     * Starts an invocation of the isolatable class without waiting for it to complete.
+     *
+     * @param arguments arguments of the invocation; they have to be strings for a main method, and primitives, strings,
+     *                  byte arrays or serializable if the invocation might run in a child JVM
+     * @return future for the result of the {@code call(Object...)} method, or for {@code null} if the main method was
+     * invoked
+     */
+    CompletableFuture<Object> invoke(Object... arguments);
+}
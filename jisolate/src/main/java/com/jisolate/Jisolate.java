@@ -30,4 +30,11 @@ public class Jisolate {
     public static JvmIsolater.Builder jvmIsolation() {
         return new JvmIsolater.Builder();
     }
+
+    /**
+     * Isolation which uses a class loader isolate where it works and escalates to child JVMs where it doesn't.
+     */
+    public static AdaptiveIsolater.Builder adaptiveIsolation() {
+        return new AdaptiveIsolater.Builder();
+    }
 }
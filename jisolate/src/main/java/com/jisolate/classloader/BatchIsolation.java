@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.metrics.Metrics;
+import com.jisolate.properties.PropertyScope;
+import com.jisolate.properties.ThreadLocalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Invokes the {@code call(Object...)} method of an isolated class once per element of a stream of arguments. The
+ * isolated class is loaded once and the invocations are spread across a work-stealing pool whose threads share the
+ * batch's class loader and scope of system properties.
+ * <p>
+ * Arguments are only pulled from the source stream while fewer than twice the parallelism of invocations are running
+ * or waiting to be consumed, so a slow consumer holds back the source rather than buffering all results. The batch is
+ * torn down once all results have been consumed, an invocation fails or the returned stream is closed.
+ */
+class BatchIsolation implements Iterator<Object>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchIsolation.class);
+    private static final AtomicInteger batchCount = new AtomicInteger();
+
+    private final Stream<Object[]> source;
+    private final Iterator<Object[]> arguments;
+    private final ChildFirstUrlClassLoader classLoader;
+    private final ForkJoinPool pool;
+    private final IsolatedInvoker invoker;
+    private final String name;
+    private final boolean ordered;
+    private final Duration teardownTimeout;
+    private final int window;
+    private final Queue<CompletableFuture<Object>> pending = new ArrayDeque<>();
+    private final BlockingQueue<CompletableFuture<Object>> completed = new LinkedBlockingQueue<>();
+    private int inFlight;
+    private boolean closed;
+
+    private BatchIsolation(ChildFirstUrlClassLoader classLoader, String isolatableClassName, Stream<Object[]> source,
+                           int parallelism, boolean ordered, Duration teardownTimeout) {
+        this.classLoader = classLoader;
+        this.source = source;
+        this.arguments = source.iterator();
+        this.ordered = ordered;
+        this.teardownTimeout = teardownTimeout;
+        this.window = 2 * parallelism;
+        String batchName = "IsolationBatch-" + batchCount.incrementAndGet();
+        this.name = batchName + " for " + isolatableClassName;
+        PropertyScope scope = ThreadLocalProperties.newIsolationScope();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(p) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    ThreadLocalProperties.setScope(scope);
+                }
+            };
+            thread.setName(batchName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }, null, true);
+        ThreadLocalProperties.activate();
+        try {
+            this.invoker = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return IsolatedInvoker.load(classLoader, isolatableClassName);
+                } catch (ClassNotFoundException e) {
+                    throw new RuntimeException("Failed to load " + isolatableClassName, e);
+                }
+            }, pool).join();
+        } catch (CompletionException e) {
+            close();
+            throw unwrap(e);
+        }
+        Metrics.counter(Metrics.LIVE_CLASS_LOADER_ISOLATES).increment();
+        log.debug("Opened isolation batch for {} with parallelism {}", isolatableClassName, parallelism);
+    }
+
+    static Stream<Object> stream(ChildFirstUrlClassLoader classLoader, String isolatableClassName,
+                                 Stream<Object[]> arguments, int parallelism, boolean ordered,
+                                 Duration teardownTimeout) {
+        BatchIsolation batch = new BatchIsolation(classLoader, isolatableClassName, arguments, parallelism, ordered,
+                teardownTimeout);
+        int characteristics = ordered ? Spliterator.ORDERED : 0;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batch, characteristics), false)
+                .onClose(batch::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed)
+            return false;
+        while (inFlight < window && arguments.hasNext())
+            submit(arguments.next());
+        if (inFlight == 0) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        CompletableFuture<Object> result;
+        try {
+            result = ordered ? pending.remove() : completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RuntimeException("Interrupted whilst waiting for isolated invocation", e);
+        }
+        inFlight--;
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            close();
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Stops the batch's threads, as well as any threads started by the isolated code, and closes its class loader.
+     * Invocations which are still running are interrupted.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pool.shutdownNow();
+            IsolationTeardown.tearDown(classLoader, name, teardownTimeout);
+            if (invoker != null)
+                Metrics.counter(Metrics.LIVE_CLASS_LOADER_ISOLATES).decrement();
+            source.close();
+        }
+    }
+
+    private void submit(Object[] args) {
+        CompletableFuture<Object> result = CompletableFuture.supplyAsync(() -> invoke(args), pool);
+        inFlight++;
+        if (ordered)
+            pending.add(result);
+        else
+            result.whenComplete((r, t) -> completed.add(result));
+    }
+
+    private Object invoke(Object[] args) {
+        long startNanos = System.nanoTime();
+        try {
+            return invoker.invokeCall(args);
+        } finally {
+            Metrics.timer(Metrics.INVOCATION).recordSince(startNanos);
+        }
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof RuntimeException ? (RuntimeException) cause
+                : new RuntimeException("Isolated invocation failed", cause);
+    }
+}
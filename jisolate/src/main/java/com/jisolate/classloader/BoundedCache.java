@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Lock-free cache which holds at most {@code maxSize} entries and, if it has a weigher, at most {@code maxWeight} in
+ * total. Once it is full, the oldest entries are evicted first. Values are never {@code null}, so negative results have
+ * to be cached as a placeholder value.
+ */
+class BoundedCache<K, V> {
+
+    interface Loader<K, V, E extends Exception> {
+        V load(K key) throws E;
+    }
+
+    private final ConcurrentMap<K, V> entries = new ConcurrentHashMap<>();
+    private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final int maxSize;
+    private final long maxWeight;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong weight = new AtomicLong();
+    private final ToLongFunction<V> weigher;
+
+    BoundedCache(int maxSize) {
+        this(maxSize, Long.MAX_VALUE, v -> 0);
+    }
+
+    BoundedCache(int maxSize, long maxWeight, ToLongFunction<V> weigher) {
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached value or loads and caches it. Concurrent callers may load the same value more than once,
+     * but all of them see the value which was cached first.
+     */
+    <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+        V value = entries.get(key);
+        if (value == null) {
+            V loadedValue = loader.load(key);
+            value = entries.putIfAbsent(key, loadedValue);
+            if (value == null) {
+                value = loadedValue;
+                insertionOrder.add(key);
+                long newWeight = weight.addAndGet(weigher.applyAsLong(value));
+                if (size.incrementAndGet() > maxSize || newWeight > maxWeight)
+                    evict();
+            }
+        }
+        return value;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    long weight() {
+        return weight.get();
+    }
+
+    void clear() {
+        K key;
+        while ((key = insertionOrder.poll()) != null)
+            remove(key);
+    }
+
+    private void evict() {
+        while (size.get() > maxSize || weight.get() > maxWeight) {
+            K key = insertionOrder.poll();
+            if (key == null)
+                return;
+            remove(key);
+        }
+    }
+
+    private void remove(K key) {
+        V value = entries.remove(key);
+        if (value != null)
+            weight.addAndGet(-weigher.applyAsLong(value));
+        size.decrementAndGet();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+import static java.util.Arrays.stream;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Class loader which loads classes and resources from its URLs before delegating to its parent. It is parallel
+ * capable, so threads only contend with each other when they load the same class.
+ * <p>
+ * Classes are looked up via a {@link ClassPathIndex}: they are read straight from the JAR or directory which contains
+ * their package, and classes whose package is not on the class path are delegated to the parent right away. Class
+ * files in JARs are read via the process-wide {@link ClassBytesCache}, so further isolations define their classes
+ * from cached bytes.
+ * <p>
+ * Resource lookups, including those which find nothing, are cached in bounded caches. This makes repeated probes,
+ * e.g. by {@link java.util.ServiceLoader} or logging frameworks, cheap.
+ * <p>
+ * Classes and resources of shared packages are always delegated to the parent, so that all children of the same
+ * parent share them.
+ */
+public class ChildFirstUrlClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ChildFirstUrlClassLoader.class);
+    private static final int MAX_CACHED_RESOURCES = 4096;
+    private static final int MAX_CACHED_RESOURCE_LISTS = 1024;
+    private final ClassBytesCache classBytesCache = ClassBytesCache.getDefault();
+    private final LongAdder classLoadTimeNanos = new LongAdder();
+    private final ConcurrentMap<URL, CodeSource> codeSources = new ConcurrentHashMap<>();
+    private final ClassPathIndex index;
+    private final ConcurrentMap<URL, JarFile> jarFiles = new ConcurrentHashMap<>();
+    private final LongAdder loadedClassCount = new LongAdder();
+    private final String[] sharedPackagePrefixes;
+    private final BoundedCache<String, Optional<URL>> resources = new BoundedCache<>(MAX_CACHED_RESOURCES);
+    private final BoundedCache<String, List<URL>> resourceLists = new BoundedCache<>(MAX_CACHED_RESOURCE_LISTS);
+    private final AtomicReference<Runnable> onClose;
+    private volatile boolean closed;
+
+    ChildFirstUrlClassLoader(final URL[] urls, final ClassLoader classLoader) {
+        this(urls, classLoader, Collections.emptyList());
+    }
+
+    /**
+     * @param sharedPackages names of the packages, including their sub-packages, which are loaded by the parent
+     */
+    ChildFirstUrlClassLoader(final URL[] urls, final ClassLoader classLoader, final Collection<String> sharedPackages) {
+        this(urls, classLoader, sharedPackages, null);
+    }
+
+    /**
+     * @param onClose run once when the class loader is closed, or {@code null}
+     */
+    ChildFirstUrlClassLoader(final URL[] urls, final ClassLoader classLoader, final Collection<String> sharedPackages,
+                             final Runnable onClose) {
+        super(urls, classLoader);
+        this.onClose = new AtomicReference<>(onClose);
+        this.index = ClassPathIndex.of(urls);
+        this.sharedPackagePrefixes = sharedPackages.stream()
+                .map(p -> p.trim().replace('.', '/'))
+                .filter(p -> !p.isEmpty())
+                .map(p -> p.endsWith("/") ? p : p + "/")
+                .toArray(String[]::new);
+        if (log.isDebugEnabled())
+            log.debug("Created child class loader. URLs: {}", stream(urls).map(URL::toString).collect(joining("\n")));
+    }
+
+    @Override
+    public URL getResource(final String name) {
+        return resources.get(name, n -> {
+            URL resource = isShared(n) ? null : findChildResource(n);
+            if (resource == null)
+                resource = super.getResource(n);
+            return Optional.ofNullable(resource);
+        }).orElse(null);
+    }
+
+    /**
+     * Returns the resources found by this class loader followed by those found by its parent.
+     */
+    @Override
+    public Enumeration<URL> getResources(final String name) throws IOException {
+        return Collections.enumeration(resourceLists.get(name, this::findAllResources));
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve)
+            throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass == null) {
+                if (sharedPackagePrefixes.length == 0 || !isShared(name.replace('.', '/'))) {
+                    long startNanos = System.nanoTime();
+                    loadedClass = findChildClass(name);
+                    if (loadedClass != null)
+                        recordClassLoad(System.nanoTime() - startNanos);
+                }
+                if (loadedClass != null) {
+                    log.debug("[child classloader]  {}", name);
+                } else {
+                    loadedClass = getParent().loadClass(name);
+                    log.debug("[parent classloader] {}", name);
+                }
+            } else {
+                log.debug("[found loaded class] {}", name);
+            }
+
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+            return loadedClass;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        super.close();
+        for (JarFile jarFile : jarFiles.values())
+            jarFile.close();
+        jarFiles.clear();
+        resources.clear();
+        resourceLists.clear();
+        Runnable closeAction = onClose.getAndSet(null);
+        if (closeAction != null)
+            closeAction.run();
+    }
+
+    /**
+     * Returns the number of classes loaded by this class loader rather than its parent.
+     */
+    long getLoadedClassCount() {
+        return loadedClassCount.sum();
+    }
+
+    /**
+     * Returns the time spent loading the classes of this class loader. The time for a class includes that for loading
+     * its superclass and interfaces.
+     */
+    long getClassLoadTimeNanos() {
+        return classLoadTimeNanos.sum();
+    }
+
+    private void recordClassLoad(long durationNanos) {
+        loadedClassCount.increment();
+        classLoadTimeNanos.add(durationNanos);
+        Metrics.timer(Metrics.CLASS_LOAD).record(durationNanos);
+    }
+
+    private boolean isShared(String resourceName) {
+        for (String sharedPackagePrefix : sharedPackagePrefixes)
+            if (resourceName.startsWith(sharedPackagePrefix))
+                return true;
+        return false;
+    }
+
+    private URL findChildResource(String name) {
+        if (index.isComplete() && index.getRoots(name).isEmpty())
+            return null;
+        return findResource(name);
+    }
+
+    private List<URL> findAllResources(String name) throws IOException {
+        // Keyed by string since URL.equals() may resolve host names
+        Map<String, URL> urls = new LinkedHashMap<>();
+        if (!isShared(name) && (!index.isComplete() || !index.getRoots(name).isEmpty()))
+            for (URL url : Collections.list(findResources(name)))
+                urls.putIfAbsent(url.toString(), url);
+        if (getParent() != null)
+            for (URL url : Collections.list(getParent().getResources(name)))
+                urls.putIfAbsent(url.toString(), url);
+        return Collections.unmodifiableList(new ArrayList<>(urls.values()));
+    }
+
+    /**
+     * Returns the class if it is on this class loader's class path, otherwise {@code null}.
+     */
+    private Class<?> findChildClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        try {
+            for (ClassPathIndex.Root root : index.getRoots(path)) {
+                Class<?> clazz = root.isJar() ? defineJarClass(name, path, root) : defineDirectoryClass(name, path, root);
+                if (clazz != null)
+                    return clazz;
+            }
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        } catch (SecurityException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (!index.isComplete()) {
+            try {
+                return findClass(name);
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private Class<?> defineJarClass(String name, String path, ClassPathIndex.Root root) throws IOException {
+        if (closed)
+            throw new IOException("Class loader is closed");
+        MappedJar mappedJar = classBytesCache.getJar(root.getFile());
+        if (mappedJar != null) {
+            try {
+                byte[] bytes = classBytesCache.getClassBytes(mappedJar, path);
+                if (bytes == null)
+                    return null;
+                definePackageOf(name, mappedJar.getManifest(), root.getUrl());
+                return defineClass(name, bytes, 0, bytes.length, getCodeSource(root.getUrl(), null));
+            } catch (IOException e) {
+                log.debug("Could not read {} from mapped JAR, falling back to JarFile", path, e);
+            }
+        }
+
+        JarFile jarFile = getJarFile(root);
+        JarEntry entry = jarFile.getJarEntry(path);
+        if (entry == null)
+            return null;
+
+        byte[] bytes;
+        try (InputStream in = jarFile.getInputStream(entry)) {
+            bytes = readFully(in, entry.getSize());
+        }
+        definePackageOf(name, jarFile.getManifest(), root.getUrl());
+        return defineClass(name, bytes, 0, bytes.length, getCodeSource(root.getUrl(), entry.getCodeSigners()));
+    }
+
+    private Class<?> defineDirectoryClass(String name, String path, ClassPathIndex.Root root) throws IOException {
+        File file = new File(root.getFile(), path);
+        if (!file.isFile())
+            return null;
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        definePackageOf(name, null, root.getUrl());
+        return defineClass(name, bytes, 0, bytes.length, getCodeSource(root.getUrl(), null));
+    }
+
+    @SuppressWarnings("deprecation")
+    private void definePackageOf(String className, Manifest manifest, URL url) {
+        int separatorIndex = className.lastIndexOf('.');
+        if (separatorIndex < 0)
+            return;
+
+        String packageName = className.substring(0, separatorIndex);
+        if (getPackage(packageName) == null) {
+            try {
+                if (manifest == null)
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                else
+                    definePackage(packageName, manifest, url);
+            } catch (IllegalArgumentException e) {
+                // The package was defined concurrently
+            }
+        }
+    }
+
+    private CodeSource getCodeSource(URL url, CodeSigner[] signers) {
+        if (signers != null)
+            return new CodeSource(url, signers);
+        return codeSources.computeIfAbsent(url, u -> new CodeSource(u, (CodeSigner[]) null));
+    }
+
+    private JarFile getJarFile(ClassPathIndex.Root root) throws IOException {
+        JarFile jarFile = jarFiles.get(root.getUrl());
+        if (jarFile == null) {
+            if (closed)
+                throw new IOException("Class loader is closed");
+            // Opened for the running Java version, so that Multi-Release JARs serve their versioned classes
+            JarFile newJarFile = new JarFile(root.getFile(), true, ZipFile.OPEN_READ, Runtime.version());
+            jarFile = jarFiles.putIfAbsent(root.getUrl(), newJarFile);
+            if (jarFile == null)
+                jarFile = newJarFile;
+            else
+                newJarFile.close();
+        }
+        return jarFile;
+    }
+
+    private static byte[] readFully(InputStream in, long size) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size > 0 ? (int) size : 8192);
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1)
+            bytes.write(buffer, 0, bytesRead);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Process-wide cache of the class files read from JARs, so that isolated class loaders which load the same classes
+ * don't have to read and inflate them again. Each version of a JAR, as told by its modification time and size, is
+ * {@link MappedJar memory-mapped} once. At most {@value #MAX_MAPPED_JARS} mappings are kept; older ones, including
+ * those of JARs which have since changed, are evicted and unmapped once they are garbage collected. The cached class
+ * file bytes are bounded by the {@value #MAX_BYTES_PROPERTY} system property, 64 MB by default. Setting it to
+ * {@code 0} disables both the cache and the mapping of JARs.
+ */
+class ClassBytesCache {
+
+    private static class Key {
+        private final long jarId;
+        private final String name;
+
+        Key(MappedJar jar, String name) {
+            // Refers to the JAR by id, so that cached bytes don't keep an evicted mapping alive
+            this.jarId = jar.getId();
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return jarId == key.jarId && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(jarId, name);
+        }
+    }
+
+    static final String MAX_BYTES_PROPERTY = "jisolate.classBytesCache.maxBytes";
+    private static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_ENTRIES = 64 * 1024;
+    static final int MAX_MAPPED_JARS = 256;
+    private static final byte[] MISSING = new byte[0];
+    private static final Logger log = LoggerFactory.getLogger(ClassBytesCache.class);
+    private static final ClassBytesCache defaultCache = new ClassBytesCache(
+            Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+
+    private final BoundedCache<Key, byte[]> classBytes;
+    private final BoundedCache<String, Optional<MappedJar>> jars = new BoundedCache<>(MAX_MAPPED_JARS);
+    private final boolean enabled;
+
+    ClassBytesCache(long maxBytes) {
+        this.enabled = maxBytes > 0;
+        this.classBytes = new BoundedCache<>(MAX_ENTRIES, maxBytes, bytes -> bytes.length);
+    }
+
+    static ClassBytesCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Returns the mapped JAR or {@code null} if it has to be read via {@link java.util.jar.JarFile}, e.g. because it
+     * is signed, Multi-Release or corrupt, or the cache is disabled.
+     */
+    MappedJar getJar(File jar) {
+        if (!enabled)
+            return null;
+        // A changed JAR gets a new key, so that its stale mapping is never read again and eventually evicted
+        String key = jar.getAbsolutePath() + '|' + jar.lastModified() + '|' + jar.length();
+        return jars.get(key, k -> {
+            try {
+                return Optional.ofNullable(MappedJar.open(jar));
+            } catch (IOException | RuntimeException e) {
+                // Falls back to JarFile, which reports a corrupt JAR as a ClassNotFoundException
+                log.debug("Could not map JAR {}", jar, e);
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * Returns the bytes of a class file in a mapped JAR or {@code null} if it doesn't contain the class file. The
+     * returned array is shared and must not be modified.
+     *
+     * @throws IOException if the class file could not be read from the mapping, e.g. because the JAR was rewritten in
+     *                     place, in which case it should be read via {@link java.util.jar.JarFile}
+     */
+    byte[] getClassBytes(MappedJar jar, String path) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = classBytes.get(new Key(jar, path), k -> {
+                byte[] readBytes = jar.read(path);
+                return readBytes == null ? MISSING : readBytes;
+            });
+        } catch (RuntimeException | InternalError e) {
+            // A mapped JAR which is truncated while it is read fails with an InternalError rather than a crash
+            throw new IOException("Could not read " + path + " from mapped JAR", e);
+        }
+        return bytes == MISSING ? null : bytes;
+    }
+
+    int getMappedJarCount() {
+        return jars.size();
+    }
+
+    long getCachedBytes() {
+        return classBytes.weight();
+    }
+}
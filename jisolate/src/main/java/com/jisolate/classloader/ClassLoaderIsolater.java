@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.Isolater;
+import com.jisolate.metrics.Counter;
+import com.jisolate.metrics.Metrics;
+import com.jisolate.properties.PropertyScope;
+import com.jisolate.properties.ThreadLocalProperties;
+import com.jisolate.util.IsolationExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Isolater that uses a child-first classloader along with thread-local system properties to ensure isolation.
+ * <p>
+ * Libraries which don't need to be isolated can be moved into a shared layer: a single class loader for the shared JARs
+ * which is the parent of all isolated class loaders. Their classes are then only loaded once for all isolations which
+ * are open at the same time, rather than once per isolation. The shared layer is closed along with the last of them.
+ * <p>
+ * Once an isolated invocation completes, it is torn down: threads which it started are interrupted and joined, and its
+ * class loader is closed and tracked by the {@link ClassLoaderLeakDetector#getDefault() leak detector}.
+ */
+public class ClassLoaderIsolater implements Isolater {
+
+    public static class Builder {
+        private final ClassLoaderIsolater template = new ClassLoaderIsolater();
+
+        public void isolate() {
+            template.isolate();
+        }
+
+        public CompletableFuture<Object> isolateAsync() {
+            return template.isolateAsync();
+        }
+
+        /**
+         * Returns the configured isolater, which can run any number of invocations with different arguments.
+         */
+        public ClassLoaderIsolater build() {
+            requireNonNull(template.mainClassName, "The 'mainClassName' property is mandatory");
+            return new ClassLoaderIsolater(template);
+        }
+
+        /**
+         * Opens a session which keeps its isolated class loader alive across invocations.
+         */
+        public IsolationSession openSession() {
+            return template.openSession();
+        }
+
+        /**
+         * Opens a template which keeps {@code size} sessions prepared, i.e. with their isolated class initialized and
+         * {@link #withWarmUp warmed up}, and replenishes them in the background on the configured executor.
+         */
+        public IsolationTemplate openTemplate(int size) {
+            return template.openTemplate(size);
+        }
+
+        /**
+         * Invokes the {@code call(Object...)} method once per element of {@code arguments}, using a single isolated
+         * class loader and up to {@code parallelism} threads. Results are returned in the order of their arguments.
+         */
+        public Stream<Object> isolateAll(Stream<Object[]> arguments, int parallelism) {
+            return template.isolateAll(arguments, parallelism, true);
+        }
+
+        /**
+         * Like {@link #isolateAll(Stream, int)}, but returns the results in the order in which the invocations
+         * complete.
+         */
+        public Stream<Object> isolateAllUnordered(Stream<Object[]> arguments, int parallelism) {
+            return template.isolateAll(arguments, parallelism, false);
+        }
+
+        public Builder withIsolatableArguments(Object... isolatableArguments) {
+            template.isolatableArguments = asList(isolatableArguments);
+            return this;
+        }
+
+        public Builder withIsolatableClass(Class<?> isolatableClass) {
+            template.mainClassName = isolatableClass.getName();
+            return this;
+        }
+
+        /**
+         * Executor which runs the isolated invocations. By default, they run on a shared executor whose number of
+         * threads is {@link IsolationExecutors#getDefaultParallelism() bounded}.
+         */
+        public Builder withExecutor(Executor executor) {
+            template.executor = requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * Hook which is run on each newly opened session, including the prepared sessions of a template, e.g. to
+         * bootstrap a framework via {@code session.call("init")}.
+         */
+        public Builder withWarmUp(Consumer<IsolationSession> warmUp) {
+            template.warmUp = requireNonNull(warmUp);
+            return this;
+        }
+
+        /**
+         * Maximum time to wait for the threads started by an isolated invocation to terminate once they have been
+         * interrupted during teardown. Defaults to 1s.
+         */
+        public Builder withTeardownTimeout(Duration teardownTimeout) {
+            template.teardownTimeout = requireNonNull(teardownTimeout);
+            return this;
+        }
+
+        /**
+         * JARs which are not loaded by the isolated class loader. A class path element is excluded if it contains one
+         * of the specified strings, matches a {@code glob:} pattern such as {@code glob:guava-*.jar} or matches a
+         * {@code regex:} pattern.
+         */
+        public Builder withJarsToExcludeFromClassPath(Collection<String> jarsToExcludeFromClassPath) {
+            template.jarsToExcludeFromClassPath = jarsToExcludeFromClassPath;
+            return this;
+        }
+
+        /**
+         * JARs whose classes are shared by all isolations, i.e. loaded by a shared class loader rather than the
+         * isolated one. Patterns are matched like those of {@link #withJarsToExcludeFromClassPath(Collection)}, e.g.
+         * {@code slf4j-api} or {@code glob:slf4j-*.jar}.
+         */
+        public Builder withSharedJars(Collection<String> sharedJars) {
+            template.sharedJars = sharedJars;
+            return this;
+        }
+
+        public Builder withSharedJars(String... sharedJars) {
+            return withSharedJars(asList(sharedJars));
+        }
+
+        /**
+         * Packages, including their sub-packages, whose classes are shared by all isolations. They are loaded by the
+         * shared class loader if they are contained in a {@link #withSharedJars(Collection) shared JAR}, and
+         * otherwise by the class loader which loaded Jisolate.
+         */
+        public Builder withSharedPackages(Collection<String> sharedPackages) {
+            template.sharedPackages = sharedPackages;
+            return this;
+        }
+
+        public Builder withSharedPackages(String... sharedPackages) {
+            return withSharedPackages(asList(sharedPackages));
+        }
+
+        public Builder withMainClassArguments(Collection<Object> isolatableArguments) {
+            template.isolatableArguments = isolatableArguments;
+            return this;
+        }
+
+        public Builder withMainClassName(String mainClassName) {
+            template.mainClassName = mainClassName;
+            return this;
+        }
+    }
+
+    private static class IsolatedTask implements Runnable {
+        private final ChildFirstUrlClassLoader contextClassLoader;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final Collection<Object> isolatableArguments;
+        private final String isolatableClassName;
+        private final PropertyScope scope;
+        private final Duration teardownTimeout;
+
+        IsolatedTask(ChildFirstUrlClassLoader contextClassLoader, String isolatableClassName,
+                     Collection<Object> isolatableArguments, Duration teardownTimeout) {
+            this.contextClassLoader = contextClassLoader;
+            this.isolatableArguments = isolatableArguments;
+            this.isolatableClassName = isolatableClassName;
+            this.teardownTimeout = teardownTimeout;
+            ThreadLocalProperties.activate();
+            this.scope = ThreadLocalProperties.newIsolationScope();
+        }
+
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            ClassLoader previousContextClassLoader = thread.getContextClassLoader();
+            PropertyScope previousScope = ThreadLocalProperties.getScope();
+            Counter liveIsolates = Metrics.counter(Metrics.LIVE_CLASS_LOADER_ISOLATES);
+            liveIsolates.increment();
+            try {
+                Object result = null;
+                Throwable failure = null;
+                try {
+                    thread.setContextClassLoader(contextClassLoader);
+                    ThreadLocalProperties.setScope(scope);
+                    IsolatedInvoker invoker = IsolatedInvoker.load(contextClassLoader, isolatableClassName);
+                    long startNanos = System.nanoTime();
+                    result = invoker.invoke(isolatableArguments);
+                    long durationNanos = System.nanoTime() - startNanos;
+                    Metrics.timer(Metrics.INVOCATION).record(durationNanos);
+                    log.info("Invoked {} in {}ms", isolatableClassName, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+                } catch (Exception e) {
+                    failure = new RuntimeException(format("Failed to execute %s#main() in isolation",
+                            isolatableClassName), e);
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    // The thread may be reused for other isolations
+                    thread.setContextClassLoader(previousContextClassLoader);
+                    ThreadLocalProperties.setScope(previousScope);
+                }
+                // Completed before the teardown, which may wait for the threads of the isolation to terminate
+                if (failure == null)
+                    future.complete(result);
+                else
+                    future.completeExceptionally(failure);
+            } finally {
+                IsolationTeardown.tearDown(contextClassLoader, "isolation of " + isolatableClassName,
+                        teardownTimeout);
+                liveIsolates.decrement();
+            }
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ClassLoaderIsolater.class);
+    private static final ExecutorService defaultExecutor = IsolationExecutors.newBoundedExecutor("Isolater-",
+            IsolationExecutors.getDefaultParallelism());
+    public Collection<Object> isolatableArguments;
+    private Executor executor = defaultExecutor;
+    private Collection<String> jarsToExcludeFromClassPath;
+    private String mainClassName;
+    private Collection<String> sharedJars = emptyList();
+    private Collection<String> sharedPackages = emptyList();
+    private Duration teardownTimeout = Duration.ofSeconds(1);
+    private Consumer<IsolationSession> warmUp;
+
+    private ClassLoaderIsolater() {
+    }
+
+    private ClassLoaderIsolater(ClassLoaderIsolater template) {
+        isolatableArguments = template.isolatableArguments;
+        executor = template.executor;
+        jarsToExcludeFromClassPath = template.jarsToExcludeFromClassPath;
+        mainClassName = template.mainClassName;
+        sharedJars = template.sharedJars;
+        sharedPackages = template.sharedPackages;
+        teardownTimeout = template.teardownTimeout;
+        warmUp = template.warmUp;
+    }
+
+    /**
+     * Starts the isolated invocation without waiting for it to complete. Failures are logged.
+     */
+    public void isolate() {
+        isolateAsync().whenComplete((result, t) -> {
+            if (t != null)
+                log.error("Isolated invocation of {} failed", mainClassName, t);
+        });
+    }
+
+    /**
+     * Starts the isolated invocation on the configured executor.
+     *
+     * @return future for the result of the {@code call(Object...)} method, or for {@code null} if the isolated class
+     * has a main method
+     */
+    public CompletableFuture<Object> isolateAsync() {
+        return submit(isolatableArguments);
+    }
+
+    /**
+     * Starts an isolated invocation with the specified arguments rather than the configured ones.
+     */
+    @Override
+    public CompletableFuture<Object> invoke(Object... arguments) {
+        return submit(arguments == null ? null : asList(arguments));
+    }
+
+    private CompletableFuture<Object> submit(Collection<Object> arguments) {
+        ChildFirstUrlClassLoader contextClassLoader = createClassLoader();
+        IsolatedTask task = new IsolatedTask(contextClassLoader, mainClassName, arguments, teardownTimeout);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            try {
+                contextClassLoader.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+        return task.future;
+    }
+
+    public IsolationSession openSession() {
+        requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+        IsolationSession session = new IsolationSession(createClassLoader(), mainClassName, teardownTimeout);
+        if (warmUp != null) {
+            try {
+                warmUp.accept(session);
+            } catch (RuntimeException e) {
+                session.close();
+                throw new RuntimeException("Warm-up of " + mainClassName + " failed", e);
+            }
+        }
+        return session;
+    }
+
+    public IsolationTemplate openTemplate(int size) {
+        requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+        return new IsolationTemplate(this::openSession, size, executor);
+    }
+
+    /**
+     * Invokes the {@code call(Object...)} method once per element of {@code arguments}. The isolated class is loaded
+     * once and the invocations run on a work-stealing pool of {@code parallelism} threads rather than the configured
+     * executor. Arguments are pulled lazily, so only a bounded number of invocations is in flight at any time.
+     * <p>
+     * The isolation is torn down once all results have been consumed or an invocation fails. Close the returned stream
+     * to tear it down early.
+     *
+     * @param ordered whether results are returned in the order of their arguments or as the invocations complete
+     */
+    public Stream<Object> isolateAll(Stream<Object[]> arguments, int parallelism, boolean ordered) {
+        requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive, but was " + parallelism);
+        return BatchIsolation.stream(createClassLoader(), mainClassName, requireNonNull(arguments), parallelism,
+                ordered, teardownTimeout);
+    }
+
+    private ChildFirstUrlClassLoader createClassLoader() {
+        long startNanos = System.nanoTime();
+        ChildFirstUrlClassLoader classLoader = newClassLoader();
+        Metrics.timer(Metrics.CLASS_LOADER_CREATION).recordSince(startNanos);
+        return classLoader;
+    }
+
+    private ChildFirstUrlClassLoader newClassLoader() {
+        ClassLoader parent = Thread.currentThread().getContextClassLoader();
+        if (sharedJars.isEmpty())
+            return new ChildFirstUrlClassLoader(UrlProvider.getClassPathUrls(jarsToExcludeFromClassPath), parent,
+                    sharedPackages);
+
+        List<String> jarsToExclude = new ArrayList<>(sharedJars);
+        if (jarsToExcludeFromClassPath != null)
+            jarsToExclude.addAll(jarsToExcludeFromClassPath);
+        return SharedLayers.newClassLoader(UrlProvider.getClassPathUrls(jarsToExclude),
+                UrlProvider.getClassPathUrls(jarsToExcludeFromClassPath, sharedJars), parent, sharedPackages);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Tracks class loaders which have been torn down and reports those which are not garbage collected within a deadline.
+ * Such a class loader is still referenced, e.g. by a thread or a static field outside of the isolation, and keeps all
+ * of its classes in metaspace.
+ * <p>
+ * Class loaders are typically only collected by an old generation or full collection, which may not run for a long
+ * time on an idle or large heap. The deadline therefore only starts once such a collection has been observed after
+ * the teardown. If the JVM's collectors can't be told apart, any collection counts.
+ * <p>
+ * The {@link #getDefault() default detector} is used for all isolations. It checks for leaks in the background and
+ * logs a warning for each leaked class loader. Its deadline can be set in milliseconds via the
+ * {@code jisolate.leakDetection.deadline} system property and defaults to 60s.
+ */
+public class ClassLoaderLeakDetector {
+
+    /**
+     * Class loader which was not garbage collected within the deadline.
+     */
+    public static class Leak {
+        private final String description;
+        private final long tornDownNanos;
+
+        private Leak(String description, long tornDownNanos) {
+            this.description = description;
+            this.tornDownNanos = tornDownNanos;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Duration getTimeSinceTeardown() {
+            return Duration.ofNanos(System.nanoTime() - tornDownNanos);
+        }
+
+        @Override
+        public String toString() {
+            return description + " (torn down " + getTimeSinceTeardown().toMillis() + "ms ago)";
+        }
+    }
+
+    private static class TrackedClassLoader extends WeakReference<ClassLoader> {
+        private final String description;
+        private volatile long collectionObservedNanos;
+        private final long oldCollectionsAtTeardown;
+        private volatile boolean reported;
+        private final long tornDownNanos = System.nanoTime();
+
+        TrackedClassLoader(ClassLoader classLoader, String description, long oldCollections,
+                ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.description = description;
+            this.oldCollectionsAtTeardown = oldCollections;
+        }
+
+        /**
+         * Returns whether the class loader is still referenced once the deadline has passed since the first old
+         * collection which was observed after its teardown.
+         */
+        boolean isLeaked(long now, long oldCollections, long deadlineNanos) {
+            if (collectionObservedNanos == 0) {
+                if (oldCollections <= oldCollectionsAtTeardown)
+                    return false;
+                collectionObservedNanos = now;
+            }
+            return now - collectionObservedNanos >= deadlineNanos && get() != null;
+        }
+    }
+
+    private static final String DEADLINE_PROPERTY = "jisolate.leakDetection.deadline";
+    private static final String[] OLD_COLLECTOR_NAMES = {"Old", "MarkSweep", "Major", "Concurrent", "Cycles"};
+    private static final Logger log = LoggerFactory.getLogger(ClassLoaderLeakDetector.class);
+    private static volatile ClassLoaderLeakDetector defaultDetector;
+
+    private final long deadlineNanos;
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+    private final Set<TrackedClassLoader> trackedClassLoaders = ConcurrentHashMap.newKeySet();
+
+    public ClassLoaderLeakDetector(Duration deadline) {
+        this.deadlineNanos = deadline.toNanos();
+    }
+
+    /**
+     * Returns the detector which tracks all isolations and checks for leaks in the background.
+     */
+    public static ClassLoaderLeakDetector getDefault() {
+        if (defaultDetector == null) {
+            synchronized (ClassLoaderLeakDetector.class) {
+                if (defaultDetector == null) {
+                    Duration deadline = Duration.ofMillis(Long.getLong(DEADLINE_PROPERTY, 60_000));
+                    ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector(deadline);
+                    long checkPeriodMillis = Math.max(1000, deadline.toMillis() / 4);
+                    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "ClassLoaderLeakDetector");
+                        thread.setDaemon(true);
+                        thread.setContextClassLoader(ClassLoaderLeakDetector.class.getClassLoader());
+                        return thread;
+                    });
+                    scheduler.scheduleWithFixedDelay(detector::check, checkPeriodMillis, checkPeriodMillis,
+                            TimeUnit.MILLISECONDS);
+                    defaultDetector = detector;
+                }
+            }
+        }
+        return defaultDetector;
+    }
+
+    /**
+     * Starts tracking a class loader which has been torn down and is expected to be garbage collected.
+     */
+    public void track(ClassLoader classLoader, String description) {
+        trackedClassLoaders.add(new TrackedClassLoader(classLoader, description, getOldCollectionCount(), queue));
+    }
+
+    /**
+     * Returns the number of tracked class loaders which have not been garbage collected yet.
+     */
+    public int getTrackedCount() {
+        expungeCollected();
+        return trackedClassLoaders.size();
+    }
+
+    /**
+     * Returns the class loaders which have not been garbage collected within the deadline.
+     */
+    public List<Leak> getLeaks() {
+        expungeCollected();
+        long now = System.nanoTime();
+        long oldCollections = getOldCollectionCount();
+        return trackedClassLoaders.stream()
+                .filter(t -> t.isLeaked(now, oldCollections, deadlineNanos))
+                .map(t -> new Leak(t.description, t.tornDownNanos))
+                .collect(toList());
+    }
+
+    /**
+     * Logs a warning for each class loader which has newly exceeded the deadline.
+     */
+    public void check() {
+        expungeCollected();
+        long now = System.nanoTime();
+        long oldCollections = getOldCollectionCount();
+        for (TrackedClassLoader trackedClassLoader : trackedClassLoaders) {
+            if (!trackedClassLoader.reported && trackedClassLoader.isLeaked(now, oldCollections, deadlineNanos)) {
+                trackedClassLoader.reported = true;
+                log.warn("{} was not garbage collected within {}ms of the first old collection after its teardown",
+                        trackedClassLoader.description, TimeUnit.NANOSECONDS.toMillis(deadlineNanos));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of old generation, full and concurrent collections, or of all collections if none of the
+     * collectors is known to collect the old generation.
+     */
+    static long getOldCollectionCount() {
+        long oldCollections = 0;
+        long collections = 0;
+        boolean oldCollectorFound = false;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long count = Math.max(0, collector.getCollectionCount());
+            collections += count;
+            if (isOldCollector(collector.getName())) {
+                oldCollectorFound = true;
+                oldCollections += count;
+            }
+        }
+        return oldCollectorFound ? oldCollections : collections;
+    }
+
+    private static boolean isOldCollector(String name) {
+        if (name.contains("Minor"))
+            return false;
+        for (String oldCollectorName : OLD_COLLECTOR_NAMES)
+            if (name.contains(oldCollectorName))
+                return true;
+        return false;
+    }
+
+    private void expungeCollected() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = queue.poll()) != null) {
+            trackedClassLoaders.remove(reference);
+            log.debug("{} was garbage collected", ((TrackedClassLoader) reference).description);
+        }
+    }
+}
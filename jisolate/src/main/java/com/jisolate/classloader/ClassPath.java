@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.util.ClassPathUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Immutable model of the class path, i.e. of its elements and their URLs, without those of the JDK. The current model
+ * is cached and only recreated if the class path or Java home changes. Each model caches the URLs selected by the
+ * most recently used combinations of exclusions and inclusions.
+ */
+final class ClassPath {
+
+    private static class Selection {
+        private final JarMatcher exclusions;
+        private final JarMatcher inclusions;
+
+        Selection(JarMatcher exclusions, JarMatcher inclusions) {
+            this.exclusions = exclusions;
+            this.inclusions = inclusions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Selection))
+                return false;
+            Selection other = (Selection) o;
+            return exclusions.equals(other.exclusions) && Objects.equals(inclusions, other.inclusions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(exclusions, inclusions);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ClassPath.class);
+    private static final int MAX_CACHED_SELECTIONS = 64;
+    private static volatile ClassPath current;
+
+    private final String classPath;
+    private final List<String> elements;
+    private final String javaHome;
+    private final BoundedCache<Selection, URL[]> selections = new BoundedCache<>(MAX_CACHED_SELECTIONS);
+    private final List<URL> urls;
+
+    private ClassPath(String javaHome, String classPath, String pathSeparator) {
+        this.javaHome = javaHome;
+        this.classPath = classPath;
+        List<String> elements = new ArrayList<>();
+        List<URL> urls = new ArrayList<>();
+        for (String element : classPath.split(pathSeparator)) {
+            if (!element.isEmpty() && !element.startsWith(javaHome)) {
+                try {
+                    urls.add(new File(element).toURI().toURL());
+                    elements.add(element);
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException("Could not get class path URLs", e);
+                }
+            }
+        }
+        this.elements = unmodifiableList(elements);
+        this.urls = unmodifiableList(urls);
+    }
+
+    /**
+     * Returns the model of the current class path.
+     */
+    static ClassPath current() {
+        String classPath = ClassPathUtil.getClassPath();
+        String javaHome = ClassPathUtil.getJavaHome(System.getProperties());
+        ClassPath current = ClassPath.current;
+        // The identity check avoids comparing long class paths in the common case of unchanged system properties
+        if (current == null || (current.classPath != classPath && !current.classPath.equals(classPath))
+                || !current.javaHome.equals(javaHome)) {
+            current = new ClassPath(javaHome, classPath, ClassPathUtil.getPathSeparator(System.getProperties()));
+            ClassPath.current = current;
+            log.debug("Parsed class path with {} elements", current.elements.size());
+        }
+        return current;
+    }
+
+    List<String> getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the URLs of the elements which match none of the exclusions and, unless {@code inclusions} is
+     * {@code null}, at least one of the inclusions.
+     */
+    URL[] getUrls(JarMatcher exclusions, JarMatcher inclusions) {
+        return selections.get(new Selection(exclusions, inclusions), s -> select(exclusions, inclusions)).clone();
+    }
+
+    private URL[] select(JarMatcher exclusions, JarMatcher inclusions) {
+        List<URL> selectedUrls = new ArrayList<>(urls.size());
+        for (int i = 0; i < elements.size(); i++) {
+            String element = elements.get(i);
+            if (exclusions.matches(element))
+                log.debug("JAR {} excluded from classpath by {}", element, exclusions);
+            else if (inclusions == null || inclusions.matches(element))
+                selectedUrls.add(urls.get(i));
+        }
+        return selectedUrls.toArray(new URL[0]);
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Index of the packages contained in each root of a class path, i.e. in each of its JARs and directories. It allows
+ * for finding the roots which may contain a class or resource without searching all of them.
+ * <p>
+ * The packages of a JAR are cached in memory and in an index file. Both are keyed by the JAR's modification time and
+ * size. The packages of a directory are cached in memory along with the modification times of its subdirectories,
+ * which change whenever a package is added or removed, so that a cached directory is only walked again once it has
+ * changed. An index, and so the class loader which uses it, sees the packages of its roots as of its creation. Roots
+ * which can't be indexed, such as remote URLs or JARs whose manifest extends the class path, are reported
+ * as unindexed.
+ */
+class ClassPathIndex {
+
+    /**
+     * JAR or directory of a class path.
+     */
+    static class Root {
+        private final File file;
+        private final boolean jar;
+        private final URL url;
+
+        private Root(URL url, File file, boolean jar) {
+            this.url = url;
+            this.file = file;
+            this.jar = jar;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        URL getUrl() {
+            return url;
+        }
+
+        boolean isJar() {
+            return jar;
+        }
+    }
+
+    private static class DirectoryPackages {
+        private final Map<File, Long> directoryModificationTimes;
+        private final Set<String> packages;
+
+        DirectoryPackages(Map<File, Long> directoryModificationTimes, Set<String> packages) {
+            this.directoryModificationTimes = directoryModificationTimes;
+            this.packages = packages;
+        }
+
+        boolean isCurrent() {
+            for (Map.Entry<File, Long> entry : directoryModificationTimes.entrySet())
+                if (entry.getKey().lastModified() != entry.getValue())
+                    return false;
+            return true;
+        }
+    }
+
+    private static class JarPackages {
+        private final boolean extendsClassPath;
+        private final long lastModified;
+        private final Set<String> packages;
+        private final long size;
+
+        JarPackages(long lastModified, long size, boolean extendsClassPath, Set<String> packages) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.extendsClassPath = extendsClassPath;
+            this.packages = packages;
+        }
+
+        boolean isCurrent(File jar) {
+            return jar.lastModified() == lastModified && jar.length() == size;
+        }
+    }
+
+    static final String INDEX_DIR_PROPERTY = "jisolate.index.dir";
+    private static final int INDEX_FILE_VERSION = 2;
+    private static final String VERSIONS_DIR = "META-INF/versions/";
+    private static final Logger log = LoggerFactory.getLogger(ClassPathIndex.class);
+    private static final ConcurrentMap<String, DirectoryPackages> directoryPackagesCache = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, JarPackages> jarPackagesCache = new ConcurrentHashMap<>();
+
+    private final Map<String, List<Root>> rootsByPackage;
+    private final List<URL> unindexedRoots;
+
+    private ClassPathIndex(Map<String, List<Root>> rootsByPackage, List<URL> unindexedRoots) {
+        this.rootsByPackage = rootsByPackage;
+        this.unindexedRoots = unindexedRoots;
+    }
+
+    static ClassPathIndex of(URL[] urls) {
+        long startTime = System.currentTimeMillis();
+        Map<String, List<Root>> rootsByPackage = new HashMap<>();
+        List<URL> unindexedRoots = new ArrayList<>();
+        for (URL url : urls) {
+            try {
+                File file = toFile(url);
+                if (file == null) {
+                    unindexedRoots.add(url);
+                } else if (file.isDirectory()) {
+                    Root root = new Root(url, file, false);
+                    for (String packagePath : getDirectoryPackages(file).packages)
+                        rootsByPackage.computeIfAbsent(packagePath, p -> new ArrayList<>(1)).add(root);
+                } else if (file.isFile()) {
+                    JarPackages jarPackages = getJarPackages(file);
+                    if (jarPackages.extendsClassPath)
+                        unindexedRoots.add(url);
+                    Root root = new Root(url, file, true);
+                    for (String packagePath : jarPackages.packages)
+                        rootsByPackage.computeIfAbsent(packagePath, p -> new ArrayList<>(1)).add(root);
+                }
+            } catch (IOException e) {
+                log.warn("Could not index class path element {}", url, e);
+                unindexedRoots.add(url);
+            }
+        }
+        log.debug("Indexed {} class path elements in {}ms", urls.length, System.currentTimeMillis() - startTime);
+        return new ClassPathIndex(rootsByPackage, unindexedRoots);
+    }
+
+    /**
+     * Returns the package path of a class or resource name, e.g. {@code com/jisolate} for
+     * {@code com/jisolate/Jisolate.class}.
+     */
+    static String getPackagePath(String resourceName) {
+        int separatorIndex = resourceName.lastIndexOf('/');
+        return separatorIndex < 0 ? "" : resourceName.substring(0, separatorIndex);
+    }
+
+    /**
+     * Returns the roots, in class path order, which contain the package of the specified class or resource.
+     */
+    List<Root> getRoots(String resourceName) {
+        return rootsByPackage.getOrDefault(getPackagePath(resourceName), emptyList());
+    }
+
+    /**
+     * Returns whether all class path elements could be indexed, i.e. whether {@link #getRoots(String)} is
+     * exhaustive.
+     */
+    boolean isComplete() {
+        return unindexedRoots.isEmpty();
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol()))
+            return null;
+        try {
+            return Paths.get(url.toURI()).toFile();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static DirectoryPackages getDirectoryPackages(File directory) throws IOException {
+        String path = directory.getAbsolutePath();
+        DirectoryPackages directoryPackages = directoryPackagesCache.get(path);
+        if (directoryPackages == null || !directoryPackages.isCurrent()) {
+            directoryPackages = readDirectory(directory.toPath());
+            directoryPackagesCache.put(path, directoryPackages);
+        }
+        return directoryPackages;
+    }
+
+    private static DirectoryPackages readDirectory(Path directory) throws IOException {
+        Map<File, Long> directoryModificationTimes = new HashMap<>();
+        Set<String> packages = new HashSet<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                directoryModificationTimes.put(dir.toFile(), attributes.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    String name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+                    packages.add(getPackagePath(name));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new DirectoryPackages(directoryModificationTimes, packages);
+    }
+
+    private static JarPackages getJarPackages(File jar) throws IOException {
+        String path = jar.getAbsolutePath();
+        JarPackages jarPackages = jarPackagesCache.get(path);
+        if (jarPackages == null || !jarPackages.isCurrent(jar)) {
+            File indexFile = getIndexFile(jar);
+            jarPackages = readIndexFile(indexFile, jar);
+            if (jarPackages == null) {
+                jarPackages = readJar(jar);
+                writeIndexFile(indexFile, jar, jarPackages);
+            }
+            jarPackagesCache.put(path, jarPackages);
+        }
+        return jarPackages;
+    }
+
+    private static JarPackages readJar(File jar) throws IOException {
+        long lastModified = jar.lastModified();
+        long size = jar.length();
+        try (JarFile jarFile = new JarFile(jar, false, ZipFile.OPEN_READ, Runtime.version())) {
+            boolean multiRelease = jarFile.isMultiRelease();
+            Set<String> packages = new HashSet<>();
+            for (JarEntry entry : Collections.list(jarFile.entries()))
+                if (!entry.isDirectory())
+                    packages.add(getPackagePath(multiRelease ? getUnversionedName(entry.getName())
+                            : entry.getName()));
+            Manifest manifest = jarFile.getManifest();
+            boolean extendsClassPath = manifest != null
+                    && manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) != null;
+            return new JarPackages(lastModified, size, extendsClassPath, packages);
+        }
+    }
+
+    /**
+     * Returns the name of an entry of a Multi-Release JAR without its {@code META-INF/versions/<n>/} prefix, if any.
+     */
+    static String getUnversionedName(String entryName) {
+        if (!entryName.startsWith(VERSIONS_DIR))
+            return entryName;
+        int separatorIndex = entryName.indexOf('/', VERSIONS_DIR.length());
+        return separatorIndex < 0 ? entryName : entryName.substring(separatorIndex + 1);
+    }
+
+    private static File getIndexFile(File jar) {
+        String indexDir = System.getProperty(INDEX_DIR_PROPERTY,
+                new File(System.getProperty("java.io.tmpdir"), "jisolate-index").getPath());
+        String path = jar.getAbsolutePath();
+        return new File(indexDir, jar.getName() + "-" + Integer.toHexString(path.hashCode()) + ".idx");
+    }
+
+    private static JarPackages readIndexFile(File indexFile, File jar) {
+        if (!indexFile.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != INDEX_FILE_VERSION || !in.readUTF().equals(jar.getAbsolutePath()))
+                return null;
+            long lastModified = in.readLong();
+            long size = in.readLong();
+            if (lastModified != jar.lastModified() || size != jar.length())
+                return null;
+            boolean extendsClassPath = in.readBoolean();
+            int packageCount = in.readInt();
+            Set<String> packages = new HashSet<>(packageCount * 2);
+            for (int i = 0; i < packageCount; i++)
+                packages.add(in.readUTF());
+            return new JarPackages(lastModified, size, extendsClassPath, packages);
+        } catch (IOException e) {
+            log.debug("Could not read index file {}", indexFile, e);
+            return null;
+        }
+    }
+
+    private static void writeIndexFile(File indexFile, File jar, JarPackages jarPackages) {
+        try {
+            Files.createDirectories(indexFile.getParentFile().toPath());
+            Path tempFile = Files.createTempFile(indexFile.getParentFile().toPath(), indexFile.getName(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(INDEX_FILE_VERSION);
+                out.writeUTF(jar.getAbsolutePath());
+                out.writeLong(jarPackages.lastModified);
+                out.writeLong(jarPackages.size);
+                out.writeBoolean(jarPackages.extendsClassPath);
+                out.writeInt(jarPackages.packages.size());
+                for (String packagePath : jarPackages.packages)
+                    out.writeUTF(packagePath);
+            }
+            Files.move(tempFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.debug("Could not write index file {}", indexFile, e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+/**
+ * Invokes the entry point of an isolated class, i.e. either its static {@code main(String[])} or its
+ * {@code call(Object...)} method. Classes without either method can instead implement {@link Callable} or
+ * {@link Function}, which are invoked as interfaces.
+ * <p>
+ * The entry point is resolved once per isolated class into method handles, so that invocations don't need reflection.
+ * Invokers are cached via a {@link ClassValue} which doesn't keep isolated classes from being unloaded.
+ */
+class IsolatedInvoker {
+
+    private static final Logger log = LoggerFactory.getLogger(IsolatedInvoker.class);
+    private static final ClassValue<IsolatedInvoker> invokers = new ClassValue<IsolatedInvoker>() {
+        @Override
+        protected IsolatedInvoker computeValue(Class<?> type) {
+            return new IsolatedInvoker(type);
+        }
+    };
+
+    private final MethodHandle callMethod;
+    private final MethodHandle constructor;
+    private final Class<?> isolatedClass;
+    private final MethodHandle mainMethod;
+
+    private IsolatedInvoker(Class<?> isolatedClass) {
+        this.isolatedClass = isolatedClass;
+        this.mainMethod = findMethod(isolatedClass, "main", String[].class, true,
+                MethodType.methodType(void.class, String[].class));
+        this.callMethod = findMethod(isolatedClass, "call", Object[].class, false,
+                MethodType.methodType(Object.class, Object.class, Object[].class));
+        this.constructor = findConstructor(isolatedClass);
+    }
+
+    static IsolatedInvoker load(ClassLoader classLoader, String isolatedClassName) throws ClassNotFoundException {
+        long startTime = System.currentTimeMillis();
+        Class<?> clazz = Class.forName(isolatedClassName, true, classLoader);
+        log.info("Loaded isolated class {} in {}ms", isolatedClassName, System.currentTimeMillis() - startTime);
+        return invokers.get(clazz);
+    }
+
+    Class<?> getIsolatedClass() {
+        return isolatedClass;
+    }
+
+    /**
+     * Invokes the main method if there is one, otherwise the call method.
+     *
+     * @return the result of the call method or {@code null} if the main method was invoked
+     */
+    Object invoke(Collection<Object> isolatableArguments) {
+        if (mainMethod != null) {
+            invokeMain(isolatableArguments == null ? null : isolatableArguments.toArray(new String[0]));
+            return null;
+        } else if (callMethod != null || Callable.class.isAssignableFrom(isolatedClass)
+                || Function.class.isAssignableFrom(isolatedClass)) {
+            return invokeCall(isolatableArguments == null ? null : isolatableArguments.toArray());
+        } else {
+            throw new RuntimeException(
+                    format(
+                            "The class '%s' contained neither a static main(String[]) "
+                                    + "nor a call(Object...) method and could therefore not be invoked",
+                            isolatedClass.getName()));
+        }
+    }
+
+    /**
+     * Invokes the call method of a new instance of the isolated class. If it has none, the instance is invoked as a
+     * {@link Callable} without arguments or as a {@link Function} of its single argument.
+     */
+    @SuppressWarnings("unchecked")
+    Object invokeCall(Object[] args) {
+        try {
+            if (callMethod != null)
+                return callMethod.invokeExact(newInstance(), args);
+            else if (Callable.class.isAssignableFrom(isolatedClass) && (args == null || args.length == 0))
+                return ((Callable<Object>) newInstance()).call();
+            else if (Function.class.isAssignableFrom(isolatedClass) && args != null && args.length == 1)
+                return ((Function<Object, Object>) newInstance()).apply(args[0]);
+        } catch (Throwable t) {
+            throw new RuntimeException("Invocation of call method failed: " + isolatedClass.getName(), t);
+        }
+        throw new RuntimeException(format("The class '%s' contained no call(Object...) method and can't be invoked "
+                + "with the arguments %s", isolatedClass.getName(), Arrays.toString(args)));
+    }
+
+    void invokeMain(String[] args) {
+        if (mainMethod == null)
+            throw new RuntimeException(format("The class '%s' contained no static main(String[]) method",
+                    isolatedClass.getName()));
+        try {
+            mainMethod.invokeExact(args);
+        } catch (Throwable t) {
+            throw new RuntimeException("Invocation of main method failed: " + isolatedClass.getName(), t);
+        }
+    }
+
+    /**
+     * Creates a new instance of the isolated class via its public no-argument constructor.
+     */
+    Object newInstance() {
+        if (constructor == null)
+            throw new RuntimeException(format("The class '%s' contained no public no-argument constructor",
+                    isolatedClass.getName()));
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new RuntimeException("Instantiation failed: " + isolatedClass.getName(), t);
+        }
+    }
+
+    private static MethodHandle findMethod(Class<?> clazz, String name, Class<?> parameterType, boolean isStatic,
+                                           MethodType type) {
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(name) && Modifier.isStatic(method.getModifiers()) == isStatic
+                    && Arrays.equals(method.getParameterTypes(), new Class<?>[]{parameterType})) {
+                try {
+                    return MethodHandles.publicLookup().unreflect(method).asType(type);
+                } catch (IllegalAccessException e) {
+                    log.debug("Method {} is not accessible", method, e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle findConstructor(Class<?> clazz) {
+        if (Modifier.isAbstract(clazz.getModifiers()))
+            return null;
+        for (Constructor<?> constructor : clazz.getConstructors()) {
+            if (constructor.getParameterCount() == 0) {
+                try {
+                    return MethodHandles.publicLookup().unreflectConstructor(constructor)
+                            .asType(MethodType.methodType(Object.class));
+                } catch (IllegalAccessException e) {
+                    log.debug("Constructor {} is not accessible", constructor, e);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.metrics.Metrics;
+import com.jisolate.properties.PropertyScope;
+import com.jisolate.properties.ThreadLocalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Isolation which keeps its child-first class loader, and thus all classes loaded by it, alive across invocations.
+ * This avoids loading and JIT-compiling the isolated classes for each invocation, but static state is shared between
+ * the invocations of a session.
+ * <p>
+ * All invocations run on the session's own thread and share the same scope of system properties. Closing the
+ * session tears it down, which allows for unloading its classes.
+ */
+public class IsolationSession implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IsolationSession.class);
+    private static final AtomicInteger sessionCount = new AtomicInteger();
+
+    private final ChildFirstUrlClassLoader classLoader;
+    private final ExecutorService executor;
+    private final IsolatedInvoker invoker;
+    private final String name;
+    private final Duration teardownTimeout;
+    private volatile boolean closed;
+
+    IsolationSession(ChildFirstUrlClassLoader classLoader, String isolatableClassName, Duration teardownTimeout) {
+        this.classLoader = classLoader;
+        this.teardownTimeout = teardownTimeout;
+        String threadName = "IsolationSession-" + sessionCount.incrementAndGet();
+        this.name = threadName + " for " + isolatableClassName;
+        PropertyScope scope = ThreadLocalProperties.newIsolationScope();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(() -> {
+                ThreadLocalProperties.setScope(scope);
+                r.run();
+            }, threadName);
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+        ThreadLocalProperties.activate();
+        try {
+            this.invoker = execute(() -> IsolatedInvoker.load(classLoader, isolatableClassName));
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        Metrics.counter(Metrics.LIVE_CLASS_LOADER_ISOLATES).increment();
+        log.debug("Opened isolation session for {}", isolatableClassName);
+    }
+
+    /**
+     * Invokes the {@code call(Object...)} method of a new instance of the isolated class.
+     */
+    public Object call(Object... args) {
+        return execute(() -> timed(() -> invoker.invokeCall(args)));
+    }
+
+    /**
+     * Invokes the static {@code main(String[])} method of the isolated class.
+     */
+    public void main(String... args) {
+        execute(() -> timed(() -> {
+            invoker.invokeMain(args);
+            return null;
+        }));
+    }
+
+    /**
+     * Creates a new instance of the isolated class and returns it as the specified entry point interface, e.g.
+     * {@link java.util.function.Function} or an interface in one of the
+     * {@link ClassLoaderIsolater.Builder#withSharedPackages(String...) shared packages}. Calls of the instance are
+     * direct, i.e. they run on the calling thread rather than the session's thread.
+     */
+    public <T> T newInstance(Class<T> entryPoint) {
+        if (!entryPoint.isAssignableFrom(invoker.getIsolatedClass()))
+            throw new IllegalArgumentException(String.format("The class '%s' does not implement %s as loaded by %s; "
+                            + "its package may have to be shared", invoker.getIsolatedClass().getName(),
+                    entryPoint.getName(), entryPoint.getClassLoader()));
+        return entryPoint.cast(execute(invoker::newInstance));
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public Class<?> getIsolatedClass() {
+        return invoker.getIsolatedClass();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the session's thread, as well as any threads started by the isolated code, and closes its class loader.
+     * Invocations which are still running are interrupted.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            executor.shutdownNow();
+            IsolationTeardown.tearDown(classLoader, name, teardownTimeout);
+            if (invoker != null)
+                Metrics.counter(Metrics.LIVE_CLASS_LOADER_ISOLATES).decrement();
+        }
+    }
+
+    private static <T> T timed(Callable<T> invocation) throws Exception {
+        long startNanos = System.nanoTime();
+        try {
+            return invocation.call();
+        } finally {
+            Metrics.timer(Metrics.INVOCATION).recordSince(startNanos);
+        }
+    }
+
+    private <T> T execute(Callable<T> callable) {
+        if (closed)
+            throw new IllegalStateException("Isolation session is closed");
+        try {
+            return executor.submit(callable).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new RuntimeException("Isolated invocation failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted whilst waiting for isolated invocation", e);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Isolation session is closed", e);
+        }
+    }
+}
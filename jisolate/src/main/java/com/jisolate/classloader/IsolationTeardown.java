@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Releases everything which keeps an isolated class loader alive, so that it and its classes can be unloaded.
+ */
+class IsolationTeardown {
+
+    private static final Logger log = LoggerFactory.getLogger(IsolationTeardown.class);
+
+    private IsolationTeardown() {
+    }
+
+    /**
+     * Interrupts the threads whose context class loader is the specified one and waits up to {@code joinTimeout} for
+     * them to terminate. Threads which are still alive afterwards are detached from the class loader by resetting
+     * their context class loader. Finally, the class loader is closed and tracked by the
+     * {@link ClassLoaderLeakDetector#getDefault() leak detector}.
+     */
+    static void tearDown(ChildFirstUrlClassLoader classLoader, String description, Duration joinTimeout) {
+        long startTime = System.currentTimeMillis();
+        List<Thread> threads = getThreads(classLoader);
+        for (Thread thread : threads)
+            thread.interrupt();
+
+        long deadline = System.nanoTime() + joinTimeout.toNanos();
+        for (Thread thread : threads) {
+            try {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (thread.isAlive()) {
+                log.warn("Thread {} of {} did not terminate within {}ms", thread.getName(), description,
+                        joinTimeout.toMillis());
+                thread.setContextClassLoader(classLoader.getParent());
+            }
+        }
+
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            log.warn("Could not close class loader of {}", description, e);
+        }
+        ClassLoaderLeakDetector.getDefault().track(classLoader, "Class loader of " + description);
+        Metrics.histogram(Metrics.CLASSES_PER_CLASS_LOADER).record(classLoader.getLoadedClassCount());
+        Metrics.histogram(Metrics.CLASS_LOAD_TIME_PER_CLASS_LOADER).record(classLoader.getClassLoadTimeNanos());
+        log.debug("Tore down {} and {} of its threads in {}ms", description, threads.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private static List<Thread> getThreads(ClassLoader contextClassLoader) {
+        ThreadGroup rootGroup = Thread.currentThread().getThreadGroup();
+        while (rootGroup.getParent() != null)
+            rootGroup = rootGroup.getParent();
+
+        Thread[] allThreads;
+        int threadCount;
+        do {
+            allThreads = new Thread[rootGroup.activeCount() * 2 + 16];
+            threadCount = rootGroup.enumerate(allThreads, true);
+        } while (threadCount == allThreads.length);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = allThreads[i];
+            if (thread != Thread.currentThread() && thread.getContextClassLoader() == contextClassLoader)
+                threads.add(thread);
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.properties.PropertyScope;
+import com.jisolate.properties.ThreadLocalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Serves isolations from a pool of sessions which have already loaded and initialized the isolated class and run the
+ * {@link ClassLoaderIsolater.Builder#withWarmUp warm-up}. Each session is handed out once; whenever one is taken, a
+ * replacement is prepared in the background, so that expensive static initialization doesn't add to the latency of
+ * an isolation.
+ * <p>
+ * If no prepared session is available, a new one is opened by the caller. Sessions used by {@link #call} and
+ * {@link #main} are torn down in the background as well. Closing the template closes all sessions which haven't been
+ * taken yet.
+ * <p>
+ * Sessions prepared in the background see the system properties of the thread which opened the template.
+ */
+public class IsolationTemplate implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IsolationTemplate.class);
+
+    private final Executor executor;
+    private final AtomicInteger misses = new AtomicInteger();
+    private final Supplier<IsolationSession> sessionFactory;
+    private final AtomicInteger provisioned = new AtomicInteger();
+    private final BlockingQueue<IsolationSession> ready = new LinkedBlockingQueue<>();
+    private final PropertyScope scope;
+    private final int size;
+    private volatile boolean closed;
+
+    IsolationTemplate(Supplier<IsolationSession> sessionFactory, int size, Executor executor) {
+        if (size < 1)
+            throw new IllegalArgumentException("Size must be positive, but was " + size);
+        this.sessionFactory = sessionFactory;
+        this.size = size;
+        this.executor = executor;
+        this.scope = ThreadLocalProperties.getScope();
+        replenish();
+    }
+
+    /**
+     * Returns a prepared session which the caller has to close. It isn't shared with any other caller.
+     */
+    public IsolationSession take() {
+        if (closed)
+            throw new IllegalStateException("Isolation template is closed");
+        IsolationSession session = ready.poll();
+        if (session != null)
+            provisioned.decrementAndGet();
+        replenish();
+        if (session == null) {
+            misses.incrementAndGet();
+            log.debug("No prepared isolation session available");
+            session = sessionFactory.get();
+        }
+        return session;
+    }
+
+    /**
+     * Invokes the {@code call(Object...)} method in a prepared session which is closed in the background afterwards.
+     */
+    public Object call(Object... args) {
+        IsolationSession session = take();
+        try {
+            return session.call(args);
+        } finally {
+            closeInBackground(session);
+        }
+    }
+
+    /**
+     * Invokes the static {@code main(String[])} method in a prepared session which is closed in the background
+     * afterwards.
+     */
+    public void main(String... args) {
+        IsolationSession session = take();
+        try {
+            session.main(args);
+        } finally {
+            closeInBackground(session);
+        }
+    }
+
+    /**
+     * Returns the number of sessions which are prepared and ready to be taken.
+     */
+    public int getReadyCount() {
+        return ready.size();
+    }
+
+    /**
+     * Returns the number of sessions which had to be opened by the caller since none was prepared.
+     */
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        IsolationSession session;
+        while ((session = ready.poll()) != null) {
+            provisioned.decrementAndGet();
+            session.close();
+        }
+    }
+
+    /**
+     * Prepares sessions until those which are ready or being prepared make up the size of the template.
+     */
+    private void replenish() {
+        while (!closed) {
+            int provisionedCount = provisioned.get();
+            if (provisionedCount >= size)
+                return;
+            if (provisioned.compareAndSet(provisionedCount, provisionedCount + 1)) {
+                try {
+                    CompletableFuture.runAsync(this::prepare, executor).whenComplete((r, t) -> {
+                        if (t != null) {
+                            provisioned.decrementAndGet();
+                            log.warn("Could not prepare isolation session", t);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    provisioned.decrementAndGet();
+                    log.warn("Could not prepare isolation session", e);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void closeInBackground(IsolationSession session) {
+        CompletableFuture.runAsync(session::close, executor).whenComplete((r, t) -> {
+            if (t != null)
+                log.warn("Could not close isolation session", t);
+        });
+    }
+
+    /**
+     * Prepares a session which counts as provisioned until it is taken, or until it is discarded here.
+     */
+    private void prepare() {
+        if (closed) {
+            provisioned.decrementAndGet();
+            return;
+        }
+        IsolationSession session;
+        PropertyScope previousScope = ThreadLocalProperties.getScope();
+        ThreadLocalProperties.setScope(scope);
+        try {
+            session = sessionFactory.get();
+        } finally {
+            ThreadLocalProperties.setScope(previousScope);
+        }
+        ready.add(session);
+        if (closed && ready.remove(session)) {
+            provisioned.decrementAndGet();
+            session.close();
+        }
+    }
+}
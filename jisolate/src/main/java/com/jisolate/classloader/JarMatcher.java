@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matches class path elements against a list of JAR patterns, all of which are compiled into a single regular
+ * expression. A pattern is either
+ * <ul>
+ * <li>{@code glob:<glob>}, which matches the file name or full path of an element. {@code *} and {@code ?} don't
+ * match across directories, {@code **} does and {@code {a,b}} matches either alternative.</li>
+ * <li>{@code regex:<regex>}, which matches the full path of an element, or</li>
+ * <li>any other text, which matches if it is contained in the path of an element.</li>
+ * </ul>
+ * Paths are matched with {@code /} as separator on all platforms. Blank patterns are ignored.
+ */
+final class JarMatcher {
+
+    private static final String GLOB_PREFIX = "glob:";
+    private static final String REGEX_PREFIX = "regex:";
+    private static final ConcurrentMap<List<String>, JarMatcher> matchers = new ConcurrentHashMap<>();
+
+    private final List<String> patterns;
+    private final Pattern regex;
+
+    private JarMatcher(List<String> patterns) {
+        this.patterns = patterns;
+        List<String> alternatives = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern.startsWith(GLOB_PREFIX)) {
+                String glob = globToRegex(pattern.substring(GLOB_PREFIX.length()));
+                alternatives.add("(?:.*/)?" + glob);
+            } else if (pattern.startsWith(REGEX_PREFIX)) {
+                alternatives.add(pattern.substring(REGEX_PREFIX.length()));
+            } else {
+                alternatives.add(".*" + Pattern.quote(pattern) + ".*");
+            }
+        }
+        this.regex = alternatives.isEmpty() ? null
+                : Pattern.compile("(?:" + String.join(")|(?:", alternatives) + ")", Pattern.DOTALL);
+    }
+
+    /**
+     * Returns the matcher for the patterns. Matchers are cached, so that a list of patterns is compiled only once.
+     */
+    static JarMatcher of(Collection<String> patterns) {
+        List<String> trimmedPatterns = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            String trimmedPattern = pattern.trim();
+            if (!trimmedPattern.isEmpty())
+                trimmedPatterns.add(trimmedPattern);
+        }
+        return matchers.computeIfAbsent(trimmedPatterns, JarMatcher::new);
+    }
+
+    boolean matches(String classPathElement) {
+        return regex != null && regex.matcher(classPathElement.replace(File.separatorChar, '/')).matches();
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inAlternatives = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '{' && !inAlternatives) {
+                regex.append("(?:");
+                inAlternatives = true;
+            } else if (c == '}' && inAlternatives) {
+                regex.append(')');
+                inAlternatives = false;
+            } else if (c == ',' && inAlternatives) {
+                regex.append('|');
+            } else {
+                if (c == '\\' && i + 1 < glob.length())
+                    c = glob.charAt(++i);
+                if ("\\.[]{}()<>*+-=!?^$|,".indexOf(c) >= 0)
+                    regex.append('\\');
+                regex.append(c);
+            }
+        }
+        if (inAlternatives)
+            throw new IllegalArgumentException("Unclosed alternatives in glob " + glob);
+        return regex.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JarMatcher && patterns.equals(((JarMatcher) o).patterns);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(patterns);
+    }
+
+    @Override
+    public String toString() {
+        return patterns.toString();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only view of an unsigned JAR which is memory-mapped rather than opened as a {@link JarFile}. Only its central
+ * directory is parsed when it is opened; entries are read straight from the mapping and inflated if necessary.
+ * <p>
+ * JARs which this reader doesn't support, i.e. signed and Multi-Release JARs, ZIP64 archives and those with encrypted
+ * entries or unknown compression methods, are reported as {@code null} by {@link #open(File)} and should be read via
+ * {@link JarFile}. Offsets are checked against the size of the JAR, so a corrupt JAR fails with an
+ * {@link IOException}.
+ */
+class MappedJar {
+
+    private static class Entry {
+        private final int compressedSize;
+        private final int localHeaderOffset;
+        private final int method;
+        private final int size;
+
+        Entry(int method, int compressedSize, int size, int localHeaderOffset) {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(MappedJar.class);
+    private static final AtomicLong ids = new AtomicLong();
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int ENCRYPTED_FLAG = 1;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+    private final long id = ids.incrementAndGet();
+    private final Manifest manifest;
+
+    private MappedJar(ByteBuffer buffer, Map<String, Entry> entries) throws IOException {
+        this.buffer = buffer;
+        this.entries = entries;
+        byte[] manifestBytes = read(JarFile.MANIFEST_NAME);
+        this.manifest = manifestBytes == null ? null : new Manifest(new ByteArrayInputStream(manifestBytes));
+    }
+
+    /**
+     * Maps the JAR and reads its central directory.
+     *
+     * @return the JAR or {@code null} if it is not supported
+     */
+    static MappedJar open(File jar) throws IOException {
+        long length = jar.length();
+        if (length < END_HEADER_SIZE || length > Integer.MAX_VALUE)
+            return null;
+
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        ByteBuffer buffer = mapping.order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, Entry> entries = readCentralDirectory(buffer);
+        if (entries == null) {
+            log.debug("Not mapping unsupported JAR {}", jar);
+            return null;
+        }
+        MappedJar mappedJar = new MappedJar(buffer, entries);
+        if (isMultiRelease(mappedJar.manifest)) {
+            // Versioned entries are only resolved by a JarFile opened for the running Java version
+            log.debug("Not mapping Multi-Release JAR {}", jar);
+            return null;
+        }
+        return mappedJar;
+    }
+
+    /**
+     * Returns an id which is unique within this process.
+     */
+    long getId() {
+        return id;
+    }
+
+    Manifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Returns the uncompressed bytes of an entry or {@code null} if there is no such entry.
+     */
+    byte[] read(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null)
+            return null;
+
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int offset = entry.localHeaderOffset;
+        if ((long) offset + LOCAL_HEADER_SIZE > view.limit() || view.getInt(offset) != LOCAL_HEADER_SIGNATURE)
+            throw new IOException("Invalid local header of " + name);
+        long dataOffset = (long) offset + LOCAL_HEADER_SIZE + (view.getShort(offset + 26) & 0xffff)
+                + (view.getShort(offset + 28) & 0xffff);
+        if (dataOffset + entry.compressedSize > view.limit())
+            throw new IOException("Truncated entry " + name);
+        view.position((int) dataOffset).limit((int) dataOffset + entry.compressedSize);
+
+        byte[] bytes = new byte[entry.size];
+        if (entry.method == STORED) {
+            if (entry.size != entry.compressedSize)
+                throw new IOException("Invalid size of stored entry " + name);
+            view.get(bytes);
+            return bytes;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(view);
+            int bytesRead = 0;
+            while (bytesRead < bytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, bytesRead, bytes.length - bytesRead);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                bytesRead += inflated;
+            }
+            if (bytesRead != bytes.length)
+                throw new IOException("Truncated entry " + name);
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid entry " + name, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns the entries by name or {@code null} if the JAR is not supported.
+     */
+    private static Map<String, Entry> readCentralDirectory(ByteBuffer buffer) throws IOException {
+        int endHeaderOffset = findEndHeader(buffer);
+        if (endHeaderOffset < 0)
+            throw new IOException("No end of central directory record");
+        if (endHeaderOffset >= ZIP64_LOCATOR_SIZE
+                && buffer.getInt(endHeaderOffset - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIGNATURE)
+            return null;
+
+        int entryCount = buffer.getShort(endHeaderOffset + 10) & 0xffff;
+        long centralDirectoryOffset = buffer.getInt(endHeaderOffset + 16) & 0xffffffffL;
+        if (centralDirectoryOffset >= endHeaderOffset)
+            throw new IOException("Invalid central directory offset " + centralDirectoryOffset);
+
+        Map<String, Entry> entries = new HashMap<>(entryCount * 4 / 3 + 1);
+        int offset = (int) centralDirectoryOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if (offset + CENTRAL_HEADER_SIZE > endHeaderOffset || buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE)
+                throw new IOException("Invalid central directory header at " + offset);
+            int flags = buffer.getShort(offset + 8) & 0xffff;
+            int method = buffer.getShort(offset + 10) & 0xffff;
+            long compressedSize = buffer.getInt(offset + 20) & 0xffffffffL;
+            long size = buffer.getInt(offset + 24) & 0xffffffffL;
+            int nameLength = buffer.getShort(offset + 28) & 0xffff;
+            int extraLength = buffer.getShort(offset + 30) & 0xffff;
+            int commentLength = buffer.getShort(offset + 32) & 0xffff;
+            long localHeaderOffset = buffer.getInt(offset + 42) & 0xffffffffL;
+            if (offset + CENTRAL_HEADER_SIZE + nameLength > endHeaderOffset)
+                throw new IOException("Invalid central directory header at " + offset);
+            String name = readName(buffer, offset + CENTRAL_HEADER_SIZE, nameLength);
+
+            if (isSignatureFile(name) || (flags & ENCRYPTED_FLAG) != 0 || (method != STORED && method != DEFLATED)
+                    || compressedSize >= Integer.MAX_VALUE || size >= Integer.MAX_VALUE
+                    || localHeaderOffset >= Integer.MAX_VALUE)
+                return null;
+            if (!name.endsWith("/"))
+                entries.putIfAbsent(name, new Entry(method, (int) compressedSize, (int) size, (int) localHeaderOffset));
+            if (localHeaderOffset + LOCAL_HEADER_SIZE + compressedSize > centralDirectoryOffset)
+                throw new IOException("Invalid offset of entry " + name);
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int findEndHeader(ByteBuffer buffer) {
+        int minOffset = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_LENGTH);
+        for (int offset = buffer.limit() - END_HEADER_SIZE; offset >= minOffset; offset--)
+            if (buffer.getInt(offset) == END_HEADER_SIGNATURE)
+                return offset;
+        return -1;
+    }
+
+    private static String readName(ByteBuffer buffer, int offset, int length) {
+        byte[] name = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isMultiRelease(Manifest manifest) {
+        return manifest != null
+                && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.regionMatches(true, 0, "META-INF/", 0, 9))
+            return false;
+        String upperCaseName = name.toUpperCase(Locale.ROOT);
+        return upperCaseName.endsWith(".SF") || upperCaseName.endsWith(".RSA") || upperCaseName.endsWith(".DSA")
+                || upperCaseName.endsWith(".EC");
+    }
+}
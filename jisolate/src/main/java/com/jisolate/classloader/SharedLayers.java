@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class loaders for shared JARs, one per parent and set of shared JARs. A shared class loader lives as long as the
+ * isolated class loaders which delegate to it: it is closed and forgotten once the last of them has been closed, so
+ * that neither it nor its parent is kept alive by the isolater.
+ */
+class SharedLayers {
+
+    private static class Layer {
+        private final List<Object> key;
+        private final ChildFirstUrlClassLoader classLoader;
+        private int users;
+
+        Layer(List<Object> key, ChildFirstUrlClassLoader classLoader) {
+            this.key = key;
+            this.classLoader = classLoader;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(SharedLayers.class);
+    private static final Map<List<Object>, Layer> layers = new HashMap<>();
+
+    private SharedLayers() {
+    }
+
+    /**
+     * Creates an isolated class loader which delegates to the shared class loader for {@code sharedUrls} and
+     * {@code parent}, creating the latter if none of its isolated class loaders is open.
+     */
+    static ChildFirstUrlClassLoader newClassLoader(URL[] urls, URL[] sharedUrls, ClassLoader parent,
+                                                   Collection<String> sharedPackages) {
+        Layer layer = acquire(sharedUrls, parent);
+        try {
+            return new ChildFirstUrlClassLoader(urls, layer.classLoader, sharedPackages, () -> release(layer));
+        } catch (RuntimeException e) {
+            release(layer);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of shared class loaders which are open.
+     */
+    static int size() {
+        synchronized (layers) {
+            return layers.size();
+        }
+    }
+
+    private static Layer acquire(URL[] sharedUrls, ClassLoader parent) {
+        List<Object> key = new ArrayList<>(sharedUrls.length + 1);
+        key.add(parent);
+        for (URL sharedUrl : sharedUrls)
+            key.add(sharedUrl.toString());
+        synchronized (layers) {
+            Layer layer = layers.computeIfAbsent(key, k -> {
+                log.debug("Created shared class loader for {} JARs", sharedUrls.length);
+                return new Layer(k, new ChildFirstUrlClassLoader(sharedUrls, parent));
+            });
+            layer.users++;
+            return layer;
+        }
+    }
+
+    private static void release(Layer layer) {
+        synchronized (layers) {
+            if (--layer.users > 0)
+                return;
+            layers.remove(layer.key);
+        }
+        try {
+            layer.classLoader.close();
+        } catch (IOException e) {
+            log.warn("Could not close shared class loader", e);
+        }
+        ClassLoaderLeakDetector.getDefault().track(layer.classLoader, "Shared class loader");
+        log.debug("Closed shared class loader since its last isolated class loader was closed");
+    }
+}
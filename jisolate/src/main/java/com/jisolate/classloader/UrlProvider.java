@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import java.net.URL;
+import java.util.Collection;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Provides the URLs of the class path elements for isolated class loaders. Both the class path and the JAR patterns
+ * are parsed once and cached, see {@link ClassPath} and {@link JarMatcher}.
+ */
+class UrlProvider {
+
+    static URL[] getClassPathUrls(final Collection<String> jarsToExcludeFromClassPath) {
+        return getClassPathUrls(jarsToExcludeFromClassPath, null);
+    }
+
+    /**
+     * Returns the URLs of the class path elements which match none of the JARs to exclude and, unless
+     * {@code jarsToInclude} is {@code null}, at least one of the JARs to include.
+     */
+    static URL[] getClassPathUrls(final Collection<String> jarsToExcludeFromClassPath,
+                                  final Collection<String> jarsToInclude) {
+        return ClassPath.current().getUrls(
+                JarMatcher.of(jarsToExcludeFromClassPath == null ? emptyList() : jarsToExcludeFromClassPath),
+                jarsToInclude == null ? null : JarMatcher.of(jarsToInclude));
+    }
+}
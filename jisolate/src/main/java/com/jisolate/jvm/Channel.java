@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Bidirectional channel between a parent and a child JVM. Each message is sent as a frame consisting of its length,
+ * the ID of the call it belongs to, its type and its payload. Frames may be sent concurrently, but only one thread
+ * may receive them.
+ */
+class Channel implements Closeable {
+
+    interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static class Frame {
+        private final int callId;
+        private final byte[] payload;
+        private final byte type;
+
+        private Frame(int callId, byte type, byte[] payload) {
+            this.callId = callId;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        int getCallId() {
+            return callId;
+        }
+
+        byte getType() {
+            return type;
+        }
+
+        DataInputStream getPayload() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    private static final int HEADER_LENGTH = 5;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Socket socket;
+
+    Channel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    static byte[] payload(PayloadWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        writer.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    void send(int callId, byte type) throws IOException {
+        send(callId, type, EMPTY);
+    }
+
+    void send(int callId, byte type, byte[] payload) throws IOException {
+        synchronized (out) {
+            out.writeInt(HEADER_LENGTH + payload.length);
+            out.writeInt(callId);
+            out.writeByte(type);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    /**
+     * Blocks until the next frame has been received.
+     *
+     * @throws java.io.EOFException if the other side closed the channel
+     */
+    Frame receive() throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_LENGTH)
+            throw new IOException("Invalid frame length " + length);
+        int callId = in.readInt();
+        byte type = in.readByte();
+        byte[] payload = new byte[length - HEADER_LENGTH];
+        in.readFully(payload);
+        return new Frame(callId, type, payload);
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.util.IsolationExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Accepts the connections of all child JVMs, i.e. of those which send results and events via {@link ParentChannel}
+ * and of {@link JvmIsolateWorker}s. Each child JVM identifies itself by the token it was registered with, so a single
+ * thread and server socket serve all of them. The token is read by a separate handshake thread per connection, so that
+ * a slow or silent connection doesn't hold up the others.
+ */
+final class ChannelAcceptor implements Runnable {
+
+    private static class Expiration {
+        private final Runnable onExpired;
+        private final String token;
+        private long lastHandshake;
+
+        Expiration(String token, Runnable onExpired) {
+            this.token = token;
+            this.onExpired = onExpired;
+        }
+    }
+
+    private static final int ACCEPT_POLL_MILLIS = 100;
+    private static final int TOKEN_TIMEOUT_MILLIS = 10_000;
+    private static final Logger log = LoggerFactory.getLogger(ChannelAcceptor.class);
+    private static ChannelAcceptor instance;
+
+    private final Queue<Expiration> expirations = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<String, Consumer<Socket>> handlers = new ConcurrentHashMap<>();
+    private final ServerSocket serverSocket;
+    private final ThreadFactory handshakeThreadFactory = IsolationExecutors.newThreadFactory("ChannelHandshake-");
+    private final ConcurrentSkipListSet<Long> pendingHandshakes = new ConcurrentSkipListSet<>();
+    private long acceptedHandshakes;
+
+    private ChannelAcceptor() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSocket.setSoTimeout(ACCEPT_POLL_MILLIS);
+    }
+
+    static synchronized ChannelAcceptor getInstance() throws IOException {
+        if (instance == null) {
+            instance = new ChannelAcceptor();
+            Thread thread = new Thread(instance, "ChannelAcceptor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Registers the handler of the connection which will send the returned token.
+     */
+    String register(Consumer<Socket> handler) {
+        String token = WorkerJvm.newToken();
+        handlers.put(token, handler);
+        return token;
+    }
+
+    void unregister(String token) {
+        handlers.remove(token);
+    }
+
+    /**
+     * Unregisters the handler of a child JVM which has terminated, once all connections which were pending at the
+     * time of this call have been accepted and have sent their token. Runs {@code onExpired} if the child JVM never connected.
+     */
+    void expire(String token, Runnable onExpired) {
+        expirations.add(new Expiration(token, onExpired));
+    }
+
+    @Override
+    public void run() {
+        List<Expiration> dueExpirations = new ArrayList<>();
+        List<Expiration> handshakeExpirations = new ArrayList<>();
+        while (true) {
+            // Expirations are due once an accept which started after them timed out, i.e. found no pending connection
+            Expiration expiration;
+            while ((expiration = expirations.poll()) != null)
+                dueExpirations.add(expiration);
+            try {
+                Socket socket = serverSocket.accept();
+                long handshake = ++acceptedHandshakes;
+                pendingHandshakes.add(handshake);
+                handshakeThreadFactory.newThread(() -> {
+                    try {
+                        handshake(socket);
+                    } finally {
+                        pendingHandshakes.remove(handshake);
+                    }
+                }).start();
+            } catch (SocketTimeoutException e) {
+                // A due expiration still waits for the handshakes of all connections accepted before it became due
+                for (Expiration dueExpiration : dueExpirations) {
+                    dueExpiration.lastHandshake = acceptedHandshakes;
+                    handshakeExpirations.add(dueExpiration);
+                }
+                dueExpirations.clear();
+                handshakeExpirations.removeIf(this::expireIfHandshaken);
+            } catch (IOException e) {
+                log.warn("Could not accept connection from child JVM", e);
+            }
+        }
+    }
+
+    private boolean expireIfHandshaken(Expiration expiration) {
+        if (pendingHandshakes.floor(expiration.lastHandshake) != null)
+            return false;
+        if (handlers.remove(expiration.token) != null)
+            expiration.onExpired.run();
+        return true;
+    }
+
+    private void handshake(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(TOKEN_TIMEOUT_MILLIS);
+            Consumer<Socket> handler = handlers.remove(new DataInputStream(socket.getInputStream()).readUTF());
+            if (handler == null) {
+                socket.close();
+            } else {
+                socket.setSoTimeout(0);
+                handler.accept(socket);
+            }
+        } catch (IOException e) {
+            log.debug("Rejected connection from child JVM", e);
+            try {
+                socket.close();
+            } catch (IOException closeException) {
+                log.debug("Could not close rejected connection", closeException);
+            }
+        }
+    }
+}
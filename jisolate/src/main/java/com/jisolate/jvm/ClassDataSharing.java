@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.String.format;
+
+/**
+ * Dynamic AppCDS archives for child JVMs. The first child JVM for a class path and main class dumps the classes it
+ * loaded into an archive when it exits, and later child JVMs map the archive rather than loading and verifying these
+ * classes again.
+ * <p>
+ * Archives are stored in the directory set via the {@code jisolate.cds.dir} system property, by default in
+ * {@code ${java.io.tmpdir}/jisolate-cds}. They are keyed by a hash of the class path, the modification time and size of
+ * its JARs, the main class and the Java version, so a rebuilt JAR gets a new archive rather than one which the JVM
+ * would reject. Child JVMs run on the same Java installation as this JVM, see
+ * {@link JvmIsolater#getJavaExecutable()}.
+ * <p>
+ * The JVM can only archive classes loaded from JARs and refuses to start if the class path contains a non-empty
+ * directory, so such class paths are launched without class data sharing.
+ */
+final class ClassDataSharing {
+
+    /**
+     * Class data sharing arguments of a child JVM launch.
+     */
+    static class Launch {
+        private final List<String> arguments;
+        private final Path archive;
+        private final Path newArchive;
+
+        private Launch(List<String> arguments, Path archive, Path newArchive) {
+            this.arguments = arguments;
+            this.archive = archive;
+            this.newArchive = newArchive;
+        }
+
+        List<String> getArguments() {
+            return arguments;
+        }
+
+        /**
+         * Publishes the archive created by the child JVM once it has exited.
+         */
+        void started(Process process) {
+            if (newArchive != null)
+                process.onExit().thenRun(this::publishArchive);
+        }
+
+        private void publishArchive() {
+            try {
+                if (Files.isRegularFile(newArchive)) {
+                    Files.move(newArchive, archive, StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                    log.info("Created CDS archive {} ({} KB)", archive, Files.size(archive) / 1024);
+                } else {
+                    log.warn("Child JVM did not create CDS archive {}", newArchive);
+                }
+            } catch (IOException e) {
+                log.warn("Could not publish CDS archive {}", archive, e);
+            } finally {
+                archivesInCreation.remove(archive);
+            }
+        }
+    }
+
+    static final String ARCHIVE_DIR_PROPERTY = "jisolate.cds.dir";
+    private static final Logger log = LoggerFactory.getLogger(ClassDataSharing.class);
+    private static final Set<Path> archivesInCreation = ConcurrentHashMap.newKeySet();
+    private static final Set<String> unsupportedClassPaths = ConcurrentHashMap.newKeySet();
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private ClassDataSharing() {
+    }
+
+    /**
+     * Returns whether this JVM, and thus the child JVMs it spawns, supports dynamic archives.
+     */
+    static boolean isSupported() {
+        return Runtime.version().feature() >= MIN_JAVA_VERSION;
+    }
+
+    /**
+     * Returns the arguments which make a child JVM use the archive for the class path and main class, or create it
+     * if it doesn't exist yet. Whilst one child JVM creates an archive, others are launched without one.
+     */
+    static Launch prepare(String classPath, String mainClassName) {
+        if (!isSupported())
+            return new Launch(Collections.emptyList(), null, null);
+        String directory = findNonEmptyDirectory(classPath);
+        if (directory != null) {
+            if (unsupportedClassPaths.add(classPath))
+                log.info("Launching {} without class data sharing since its class path contains directory {}",
+                        mainClassName, directory);
+            return new Launch(Collections.emptyList(), null, null);
+        }
+
+        Path archiveDir = Paths.get(System.getProperty(ARCHIVE_DIR_PROPERTY,
+                new File(System.getProperty("java.io.tmpdir"), "jisolate-cds").getPath()));
+        Path archive = archiveDir.resolve(format("%s-%s.jsa", mainClassName, hash(classPath, mainClassName)));
+        if (Files.isRegularFile(archive))
+            return new Launch(List.of("-XX:SharedArchiveFile=" + archive), archive, null);
+
+        if (archivesInCreation.add(archive)) {
+            try {
+                Files.createDirectories(archiveDir);
+                Path newArchive = Files.createTempFile(archiveDir, archive.getFileName().toString(), ".tmp");
+                // Only a unique name is needed, since the child JVM creates the archive itself
+                Files.delete(newArchive);
+                return new Launch(List.of("-XX:ArchiveClassesAtExit=" + newArchive), archive, newArchive);
+            } catch (IOException e) {
+                archivesInCreation.remove(archive);
+                log.warn("Could not prepare creation of CDS archive {}", archive, e);
+            }
+        }
+        return new Launch(Collections.emptyList(), archive, null);
+    }
+
+    private static String findNonEmptyDirectory(String classPath) {
+        for (String element : classPath.split(File.pathSeparator)) {
+            String[] files = new File(element).list();
+            if (files != null && files.length > 0)
+                return element;
+        }
+        return null;
+    }
+
+    private static String hash(String classPath, String mainClassName) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(format("%s%n%s%n%s%n", classPath, mainClassName, System.getProperty("java.vm.version"))
+                    .getBytes(StandardCharsets.UTF_8));
+            for (String element : classPath.split(File.pathSeparator)) {
+                File file = new File(element);
+                digest.update(format("%d:%d%n", file.lastModified(), file.length()).getBytes(StandardCharsets.UTF_8));
+            }
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Computes the minimal class path for a child JVM, i.e. the elements of a class path which contain the classes that
+ * are transitively referenced by its root classes. References are found by reading the constant pools of the class
+ * files, so classes which are only loaded reflectively have to be passed as additional roots. Service providers
+ * registered in {@code META-INF/services} are included if their service is referenced.
+ * <p>
+ * Directories are always kept since they typically contain resources such as configuration files. A closure is cached
+ * until the modification time or size of one of the class path's JARs changes.
+ */
+final class ClassPathClosure {
+
+    private static class Closure {
+        private final String classPath;
+        private final long fingerprint;
+
+        Closure(String classPath, long fingerprint) {
+            this.classPath = classPath;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Class path element together with the class files and service registrations it contains.
+     */
+    private static class Element implements Closeable {
+        private final File file;
+        private JarFile jarFile;
+
+        Element(File file) throws IOException {
+            this.file = file;
+            if (file.isFile())
+                this.jarFile = new JarFile(file, false);
+        }
+
+        boolean isJar() {
+            return jarFile != null;
+        }
+
+        byte[] read(String entryName) throws IOException {
+            if (jarFile == null)
+                return Files.readAllBytes(file.toPath().resolve(entryName));
+            JarEntry entry = jarFile.getJarEntry(entryName);
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+
+        List<String> getEntryNames() throws IOException {
+            if (jarFile != null)
+                return jarFile.stream().filter(e -> !e.isDirectory()).map(JarEntry::getName).collect(toList());
+            if (!file.isDirectory())
+                return Collections.emptyList();
+            Path directory = file.toPath();
+            try (Stream<Path> files = Files.walk(directory)) {
+                return files.filter(Files::isRegularFile)
+                        .map(f -> directory.relativize(f).toString().replace(File.separatorChar, '/'))
+                        .collect(toList());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (jarFile != null)
+                jarFile.close();
+        }
+    }
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+    private static final Logger log = LoggerFactory.getLogger(ClassPathClosure.class);
+    private static final ConcurrentMap<String, Closure> closures = new ConcurrentHashMap<>();
+
+    private ClassPathClosure() {
+    }
+
+    /**
+     * Returns the elements of the class path which are needed to load the root classes, in class path order. The
+     * full class path is returned if a root class can't be found or the class path can't be analyzed.
+     *
+     * @param rootClassNames binary class names such as {@code com.jisolate.Jisolate}
+     */
+    static String get(String classPath, Collection<String> rootClassNames) {
+        String key = String.join(File.pathSeparator, new TreeSet<>(rootClassNames)) + "\n" + classPath;
+        long fingerprint = getFingerprint(classPath);
+        Closure closure = closures.get(key);
+        if (closure == null || closure.fingerprint != fingerprint) {
+            closure = new Closure(compute(classPath, rootClassNames), fingerprint);
+            closures.put(key, closure);
+        }
+        return closure.classPath;
+    }
+
+    /**
+     * Returns the internal names, such as {@code java/lang/String}, of all classes referenced by the constant pool of
+     * a class file, including those only referenced by field, method and generic signatures.
+     */
+    static Set<String> getReferencedClassNames(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xCAFEBABE)
+            throw new IOException("Not a class file");
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8s = new String[constantPoolCount];
+        List<Integer> classNameIndexes = new ArrayList<>();
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8s[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classNameIndexes.add(in.readUnsignedShort());
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        Set<String> classNames = new HashSet<>();
+        for (int classNameIndex : classNameIndexes) {
+            String className = utf8s[classNameIndex];
+            if (className.startsWith("["))
+                addDescriptorClassNames(className, classNames);
+            else
+                classNames.add(className);
+        }
+        for (String utf8 : utf8s)
+            if (utf8 != null && !utf8.isEmpty() && "(L[<".indexOf(utf8.charAt(0)) >= 0)
+                addDescriptorClassNames(utf8, classNames);
+        return classNames;
+    }
+
+    /**
+     * Adds the class names of a descriptor or signature such as {@code (Ljava/util/List<Lcom/Foo;>;)V}.
+     */
+    private static void addDescriptorClassNames(String descriptor, Set<String> classNames) {
+        int start = -1;
+        for (int i = 0; i < descriptor.length(); i++) {
+            char c = descriptor.charAt(i);
+            if (start < 0) {
+                if (c == 'L' && (i == 0 || "(;<[)+-*:^".indexOf(descriptor.charAt(i - 1)) >= 0))
+                    start = i + 1;
+            } else if (c == ';' || c == '<') {
+                if (i > start)
+                    classNames.add(descriptor.substring(start, i));
+                start = -1;
+            } else if (c == '.') {
+                // Inner class of a parameterized type, e.g. Lcom/Outer<TT;>.Inner;
+                start = -1;
+            }
+        }
+    }
+
+    private static String compute(String classPath, Collection<String> rootClassNames) {
+        long startTime = System.currentTimeMillis();
+        String[] paths = classPath.split(File.pathSeparator);
+        List<Element> elements = new ArrayList<>(paths.length);
+        try {
+            Map<String, Integer> elementIndexByClassFile = new HashMap<>();
+            Map<String, List<String>> providersByService = new HashMap<>();
+            for (String path : paths) {
+                Element element = new Element(new File(path));
+                int elementIndex = elements.size();
+                elements.add(element);
+                for (String entryName : element.getEntryNames()) {
+                    if (entryName.endsWith(CLASS_FILE_SUFFIX))
+                        elementIndexByClassFile.putIfAbsent(entryName, elementIndex);
+                    else if (entryName.startsWith(SERVICES_PREFIX) && entryName.length() > SERVICES_PREFIX.length())
+                        providersByService.computeIfAbsent(entryName.substring(SERVICES_PREFIX.length())
+                                .replace('.', '/'), s -> new ArrayList<>()).addAll(readProviders(element, entryName));
+                }
+            }
+
+            boolean[] used = new boolean[elements.size()];
+            Set<String> visited = new HashSet<>();
+            Queue<String> pending = new ArrayDeque<>();
+            for (String rootClassName : rootClassNames) {
+                String className = rootClassName.replace('.', '/');
+                if (!elementIndexByClassFile.containsKey(className + CLASS_FILE_SUFFIX)) {
+                    log.warn("Using full class path since root class {} was not found on it", rootClassName);
+                    return classPath;
+                }
+                pending.add(className);
+            }
+
+            String className;
+            while ((className = pending.poll()) != null) {
+                if (!visited.add(className))
+                    continue;
+                pending.addAll(providersByService.getOrDefault(className, Collections.emptyList()));
+                Integer elementIndex = elementIndexByClassFile.get(className + CLASS_FILE_SUFFIX);
+                if (elementIndex == null)
+                    continue;
+                used[elementIndex] = true;
+                byte[] classFile = elements.get(elementIndex).read(className + CLASS_FILE_SUFFIX);
+                pending.addAll(getReferencedClassNames(classFile));
+            }
+
+            List<String> closure = new ArrayList<>();
+            for (int i = 0; i < elements.size(); i++)
+                if (used[i] || !elements.get(i).isJar())
+                    closure.add(paths[i]);
+            log.info("Reduced class path of {} from {} to {} elements in {}ms", rootClassNames, paths.length,
+                    closure.size(), System.currentTimeMillis() - startTime);
+            return String.join(File.pathSeparator, closure);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Using full class path since it could not be analyzed", e);
+            return classPath;
+        } finally {
+            for (Element element : elements) {
+                try {
+                    element.close();
+                } catch (IOException e) {
+                    log.debug("Could not close {}", element.file, e);
+                }
+            }
+        }
+    }
+
+    private static List<String> readProviders(Element element, String entryName) throws IOException {
+        List<String> providers = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(element.read(entryName)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int commentIndex = line.indexOf('#');
+                String provider = (commentIndex < 0 ? line : line.substring(0, commentIndex)).trim();
+                if (!provider.isEmpty())
+                    providers.add(provider.replace('.', '/'));
+            }
+        }
+        return providers;
+    }
+
+    private static long getFingerprint(String classPath) {
+        long fingerprint = 17;
+        for (String path : classPath.split(File.pathSeparator)) {
+            File file = new File(path);
+            fingerprint = 31 * (31 * fingerprint + file.lastModified()) + file.length();
+        }
+        return fingerprint;
+    }
+}
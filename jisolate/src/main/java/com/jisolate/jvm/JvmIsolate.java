@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static com.jisolate.jvm.ParentChannel.EVENT;
+import static com.jisolate.jvm.ParentChannel.RESULT;
+
+/**
+ * Child JVM spawned by {@link JvmIsolater#isolate()}. Besides controlling its process, it receives the results and
+ * events which the child sends via {@link ParentChannel}.
+ * <p>
+ * Its lifecycle can be observed without blocking a thread per child JVM via {@link #onExit()}.
+ */
+public class JvmIsolate implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(JvmIsolate.class);
+    private static final AtomicInteger receiverCount = new AtomicInteger();
+
+    private final MessageQueue events = new MessageQueue();
+    private final CompletableFuture<Integer> exitValue;
+    private final Process process;
+    private final MessageQueue results = new MessageQueue();
+    private final SerializationFilter serializationFilter = new SerializationFilter();
+    private final Duration shutdownTimeout;
+
+    /**
+     * @param connection completes once the child JVM has connected back with the token
+     */
+    JvmIsolate(Process process, Duration shutdownTimeout, ChannelAcceptor channelAcceptor, String token,
+               CompletableFuture<Socket> connection) {
+        this.process = process;
+        this.shutdownTimeout = shutdownTimeout;
+        this.exitValue = process.onExit().thenApply(Process::exitValue);
+        connection.thenAccept(this::startReceiver);
+        exitValue.thenRun(() -> channelAcceptor.expire(token, () -> {
+            // The child JVM never connected, so no receiver ends the streams
+            results.end();
+            events.end();
+        }));
+    }
+
+    /**
+     * Terminates the child JVM gracefully and waits for it to exit. If it doesn't exit within the configured shutdown
+     * timeout, it is terminated forcibly.
+     */
+    public void close() {
+        try {
+            shutdown().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        } catch (Exception e) {
+            throw new RuntimeException("Shutdown failed for process " + process, e);
+        }
+    }
+
+    /**
+     * Asks the child JVM to terminate and forcibly terminates it if it hasn't exited within the configured shutdown
+     * timeout, without blocking the invoker.
+     *
+     * @return future for the exit value
+     */
+    public CompletableFuture<Integer> shutdown() {
+        if (process.isAlive()) {
+            process.destroy();
+            CompletableFuture.runAsync(() -> {
+                if (process.isAlive()) {
+                    log.warn("Child JVM {} did not terminate within {}ms and is terminated forcibly", getPid(),
+                            shutdownTimeout.toMillis());
+                    process.destroyForcibly();
+                }
+            }, CompletableFuture.delayedExecutor(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        return onExit();
+    }
+
+    /**
+     * Returns a future which completes with the exit value of the child JVM once it has terminated.
+     */
+    public CompletableFuture<Integer> onExit() {
+        return exitValue.thenApply(v -> v);
+    }
+
+    public int waitFor() {
+        try {
+            return process.waitFor();
+        } catch (Exception e) {
+            throw new RuntimeException("Waiting failed for process " + process, e);
+        }
+    }
+
+    /**
+     * Waits until the child JVM has terminated or the timeout has elapsed.
+     *
+     * @return whether the child JVM has terminated
+     */
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return process.waitFor(timeout, unit);
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    public long getPid() {
+        return process.pid();
+    }
+
+    /**
+     * Returns the CPU time used by the child JVM so far, if the operating system reports it.
+     */
+    public Optional<Duration> getCpuTime() {
+        return process.info().totalCpuDuration();
+    }
+
+    /**
+     * Returns the resident set size of the child JVM in bytes. It is only available on Linux and whilst the child
+     * JVM is alive.
+     */
+    public OptionalLong getResidentSetSize() {
+        Path status = Paths.get("/proc", String.valueOf(process.pid()), "status");
+        try (Stream<String> lines = Files.lines(status, StandardCharsets.US_ASCII)) {
+            return lines.filter(l -> l.startsWith("VmRSS:"))
+                    .mapToLong(l -> Long.parseLong(l.replaceAll("[^0-9]", "")) * 1024)
+                    .findFirst();
+        } catch (IOException | RuntimeException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Returns the results sent by the child JVM via {@link ParentChannel#sendResult(Object)}. The stream blocks until
+     * the next result has been received and ends once the child JVM has terminated.
+     */
+    public Stream<Object> results() {
+        return results.stream();
+    }
+
+    /**
+     * Returns the events sent by the child JVM via {@link ParentChannel#sendEvent(Object)}. The stream blocks until
+     * the next event has been received and ends once the child JVM has terminated.
+     */
+    public Stream<Object> events() {
+        return events.stream();
+    }
+
+    private void startReceiver(Socket socket) {
+        Thread receiver = new Thread(() -> receive(socket), "JvmIsolate-Receiver-" + receiverCount.incrementAndGet());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void receive(Socket socket) {
+        try (Channel channel = new Channel(socket)) {
+            while (true) {
+                Channel.Frame frame = channel.receive();
+                Object message = Codec.read(frame.getPayload(), serializationFilter);
+                if (frame.getType() == RESULT)
+                    results.add(message);
+                else if (frame.getType() == EVENT)
+                    events.add(message);
+                else
+                    log.warn("Ignored message of unknown type {} from child JVM", frame.getType());
+            }
+        } catch (EOFException e) {
+            // The child JVM terminated
+        } catch (IOException e) {
+            log.debug("Channel of child JVM closed", e);
+        } finally {
+            results.end();
+            events.end();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pool of pre-spawned child JVMs which hides the JVM startup time from the invoker. Each pooled JVM is started with the
+ * class path, system properties and command line arguments of the {@link JvmIsolater} it is built on, and loads and
+ * initializes its main class. A pre-spawned JVM can also run a warm-up main method before it becomes idle, so that the
+ * code of the invocations is already JIT-compiled.
+ * <p>
+ * A pooled JVM runs the main methods it is handed one after the other, so static state is shared between invocations
+ * of the same JVM. By default, a pooled JVM is therefore retired after a single use; raise {@code maxUses} to trade
+ * isolation for even lower latency.
+ */
+public class JvmIsolatePool implements Closeable {
+
+    public static class Builder {
+        private final JvmIsolater isolater;
+        private Duration maxAge;
+        private int maxUses = 1;
+        private int size = 1;
+        private Duration spawnTimeout = Duration.ofSeconds(30);
+        private List<String> warmUpArguments = emptyList();
+        private String warmUpClassName;
+
+        Builder(JvmIsolater isolater) {
+            this.isolater = isolater;
+        }
+
+        public JvmIsolatePool build() {
+            return new JvmIsolatePool(this);
+        }
+
+        /**
+         * Pooled JVMs which are older than this are retired rather than handed out. By default, their age is unlimited.
+         */
+        public Builder withMaxAge(Duration maxAge) {
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Number of main method invocations after which a pooled JVM is retired. Defaults to 1.
+         */
+        public Builder withMaxUses(int maxUses) {
+            if (maxUses < 1)
+                throw new IllegalArgumentException("maxUses must be positive, but was " + maxUses);
+            this.maxUses = maxUses;
+            return this;
+        }
+
+        /**
+         * Number of idle JVMs the pool aims to keep ready. Defaults to 1.
+         */
+        public Builder withSize(int size) {
+            if (size < 0)
+                throw new IllegalArgumentException("size must not be negative, but was " + size);
+            this.size = size;
+            return this;
+        }
+
+        public Builder withSpawnTimeout(Duration spawnTimeout) {
+            this.spawnTimeout = requireNonNull(spawnTimeout);
+            return this;
+        }
+
+        /**
+         * Main method which each pre-spawned JVM runs once before it becomes idle. It doesn't count towards
+         * {@code maxUses}. If it fails, the JVM is retired. By default, there is no warm-up.
+         */
+        public Builder withWarmUp(String warmUpClassName, String... warmUpArguments) {
+            this.warmUpClassName = requireNonNull(warmUpClassName);
+            this.warmUpArguments = asList(warmUpArguments);
+            return this;
+        }
+    }
+
+    /**
+     * Snapshot of the pool's metrics.
+     */
+    public static class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long retired;
+        private final long spawned;
+        private final long maxSpawnLatencyNanos;
+        private final long totalSpawnLatencyNanos;
+
+        Statistics(long hits, long misses, long spawned, long retired, long totalSpawnLatencyNanos,
+                   long maxSpawnLatencyNanos) {
+            this.hits = hits;
+            this.misses = misses;
+            this.spawned = spawned;
+            this.retired = retired;
+            this.totalSpawnLatencyNanos = totalSpawnLatencyNanos;
+            this.maxSpawnLatencyNanos = maxSpawnLatencyNanos;
+        }
+
+        /**
+         * Number of invocations which were served by an idle, pre-spawned JVM.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of invocations which had to wait for a JVM to be spawned.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getRetired() {
+            return retired;
+        }
+
+        public long getSpawned() {
+            return spawned;
+        }
+
+        /**
+         * Average time between starting a child JVM and it being ready to accept invocations.
+         */
+        public long getAverageSpawnLatency(TimeUnit unit) {
+            return spawned == 0 ? 0 : unit.convert(totalSpawnLatencyNanos / spawned, TimeUnit.NANOSECONDS);
+        }
+
+        public long getMaxSpawnLatency(TimeUnit unit) {
+            return unit.convert(maxSpawnLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics{hits=%d, misses=%d, spawned=%d, retired=%d, averageSpawnLatency=%dms, "
+                            + "maxSpawnLatency=%dms}", hits, misses, spawned, retired,
+                    getAverageSpawnLatency(TimeUnit.MILLISECONDS), getMaxSpawnLatency(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(JvmIsolatePool.class);
+    private static final AtomicInteger poolCount = new AtomicInteger();
+
+    private final BlockingDeque<WorkerJvm> idle = new LinkedBlockingDeque<>();
+    private final JvmIsolater isolater;
+    private final long maxAgeNanos;
+    private final int maxUses;
+    private final int size;
+    private final ExecutorService spawner;
+    private final AtomicInteger spawning = new AtomicInteger();
+    private final Duration spawnTimeout;
+    private final List<String> warmUpArguments;
+    private final String warmUpClassName;
+    private volatile boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder retired = new LongAdder();
+    private final LongAdder spawned = new LongAdder();
+    private final AtomicLong maxSpawnLatencyNanos = new AtomicLong();
+    private final LongAdder totalSpawnLatencyNanos = new LongAdder();
+
+    private JvmIsolatePool(Builder builder) {
+        this.isolater = builder.isolater;
+        this.maxAgeNanos = builder.maxAge == null ? Long.MAX_VALUE : builder.maxAge.toNanos();
+        this.maxUses = builder.maxUses;
+        this.size = builder.size;
+        this.spawnTimeout = builder.spawnTimeout;
+        this.warmUpArguments = builder.warmUpArguments;
+        this.warmUpClassName = builder.warmUpClassName;
+
+        String threadNamePrefix = "JvmIsolatePool-" + poolCount.incrementAndGet() + "-";
+        AtomicInteger threadCount = new AtomicInteger();
+        this.spawner = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        replenish();
+    }
+
+    /**
+     * Invokes the main method of the {@link JvmIsolater}'s main class with its main class arguments and blocks until
+     * it has returned.
+     */
+    public void isolate() {
+        isolate(isolater.getMainClassName(), isolater.getMainClassArguments());
+    }
+
+    public void isolate(String mainClassName, String... mainClassArguments) {
+        isolate(mainClassName, asList(mainClassArguments));
+    }
+
+    /**
+     * Invokes the main method of the specified class in a pooled JVM and blocks until it has returned.
+     *
+     * @throws RuntimeException if the main method threw an exception or the pooled JVM terminated
+     */
+    public void isolate(String mainClassName, Collection<String> mainClassArguments) {
+        requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+        if (closed)
+            throw new IllegalStateException("Pool is closed");
+
+        WorkerJvm jvm = null;
+        try {
+            jvm = acquire();
+            jvm.invokeMain(mainClassName, mainClassArguments);
+            log.info("Performed pooled JVM isolation of {}", mainClassName);
+        } catch (IOException e) {
+            throw new RuntimeException("Pooled isolation of JVM failed", e);
+        } finally {
+            if (jvm != null)
+                release(jvm);
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(hits.sum(), misses.sum(), spawned.sum(), retired.sum(), totalSpawnLatencyNanos.sum(),
+                maxSpawnLatencyNanos.get());
+    }
+
+    /**
+     * Terminates all idle JVMs. JVMs which are in use are terminated as soon as their current invocation has returned.
+     */
+    public void close() {
+        closed = true;
+        spawner.shutdownNow();
+        WorkerJvm jvm;
+        while ((jvm = idle.pollFirst()) != null)
+            retire(jvm);
+    }
+
+    private WorkerJvm acquire() throws IOException {
+        WorkerJvm jvm;
+        while ((jvm = idle.pollFirst()) != null) {
+            if (isReusable(jvm)) {
+                hits.increment();
+                replenish();
+                return jvm;
+            }
+            retire(jvm);
+        }
+        misses.increment();
+        replenish();
+        return spawn();
+    }
+
+    private boolean isReusable(WorkerJvm jvm) {
+        return jvm.isUsable() && jvm.getUses() < maxUses && jvm.getAgeNanos() < maxAgeNanos;
+    }
+
+    private void release(WorkerJvm jvm) {
+        if (!closed && isReusable(jvm)) {
+            // Most recently used JVMs are handed out first since they are the most warmed up
+            idle.offerFirst(jvm);
+        } else {
+            retire(jvm);
+            replenish();
+        }
+    }
+
+    private synchronized void replenish() {
+        while (!closed && idle.size() + spawning.get() < size) {
+            spawning.incrementAndGet();
+            try {
+                spawner.execute(() -> {
+                    try {
+                        long startTime = System.nanoTime();
+                        WorkerJvm jvm = WorkerJvm.spawn(isolater, spawnTimeout);
+                        warmUp(jvm);
+                        // The JVM is idle before it counts as spawned, so that callers waiting for it find it
+                        if (closed)
+                            retire(jvm);
+                        else
+                            idle.offerLast(jvm);
+                        recordSpawn(startTime);
+                    } catch (Exception e) {
+                        log.warn("Could not spawn pooled JVM", e);
+                    } finally {
+                        spawning.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The pool was closed concurrently
+                spawning.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void warmUp(WorkerJvm jvm) throws IOException {
+        if (warmUpClassName == null)
+            return;
+        try {
+            jvm.warmUp(warmUpClassName, warmUpArguments);
+        } catch (IOException | RuntimeException e) {
+            retire(jvm);
+            throw e;
+        }
+    }
+
+    private void retire(WorkerJvm jvm) {
+        jvm.close();
+        retired.increment();
+        log.debug("Retired {}", jvm);
+    }
+
+    private WorkerJvm spawn() throws IOException {
+        long startTime = System.nanoTime();
+        WorkerJvm jvm = WorkerJvm.spawn(isolater, spawnTimeout);
+        recordSpawn(startTime);
+        return jvm;
+    }
+
+    private void recordSpawn(long startTime) {
+        long spawnLatencyNanos = System.nanoTime() - startTime;
+        spawned.increment();
+        totalSpawnLatencyNanos.add(spawnLatencyNanos);
+        maxSpawnLatencyNanos.accumulateAndGet(spawnLatencyNanos, Math::max);
+        log.debug("Spawned pooled JVM in {}ms", TimeUnit.NANOSECONDS.toMillis(spawnLatencyNanos));
+    }
+}
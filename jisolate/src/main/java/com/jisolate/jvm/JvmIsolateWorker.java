@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Main class of a child JVM which is controlled by its parent via a {@link Channel}. It connects back to the parent
+ * and then serves the calls it receives, one after the other, until the parent disconnects. A call either invokes the
+ * main method of a class, the entry point of an isolatable class or a method of the object which the worker was bound
+ * to.
+ */
+public class JvmIsolateWorker {
+
+    static final String PORT_PROPERTY = "jisolate.worker.port";
+    static final String TOKEN_PROPERTY = "jisolate.worker.token";
+    static final String INITIALIZE_PROPERTY = "jisolate.worker.initialize";
+
+    static final byte INVOKE_MAIN = 1;
+    static final byte BIND = 2;
+    static final byte INVOKE_METHOD = 3;
+    static final byte SUCCEEDED = 4;
+    static final byte FAILED = 5;
+    static final byte INVOKE_ISOLATABLE = 6;
+
+    private static final int MAX_FAILURE_LENGTH = 16 * 1024;
+
+    private static Object boundObject;
+    private static Method[] boundMethods;
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(System.getProperty(PORT_PROPERTY));
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            initialize(System.getProperty(INITIALIZE_PROPERTY));
+
+            // Signals readiness to the parent
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(System.getProperty(TOKEN_PROPERTY));
+            out.flush();
+            serve(new Channel(socket));
+        } catch (EOFException e) {
+            // The parent retired this JVM
+        }
+
+        // Ensures that non-daemon threads started by any of the invoked main methods don't keep this JVM alive
+        System.exit(0);
+    }
+
+    /**
+     * Returns the public methods of the specified interface in an order which is the same in parent and child JVM, so
+     * that a method can be referred to by its index.
+     */
+    static Method[] remoteMethods(Class<?> type) {
+        Method[] methods = type.getMethods();
+        Arrays.sort(methods, Comparator.comparing(m -> m.getName() + Arrays.toString(m.getParameterTypes())));
+        return methods;
+    }
+
+    static byte[] failure(Throwable t) throws IOException {
+        byte[] serializedThrowable;
+        try {
+            serializedThrowable = Channel.payload(out -> Codec.write(out, t));
+        } catch (IOException e) {
+            serializedThrowable = Channel.payload(out -> Codec.write(out, null));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(describe(t));
+        out.write(serializedThrowable);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Loads and initializes the specified class ahead of its first invocation. A failure is reported to stderr only,
+     * since the invocation will fail the same way.
+     */
+    private static void initialize(String className) {
+        if (className != null && !className.isEmpty()) {
+            try {
+                Class.forName(className, true, JvmIsolateWorker.class.getClassLoader());
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("Could not initialize " + className + ": " + e);
+            }
+        }
+    }
+
+    private static void serve(Channel channel) throws IOException {
+        while (true) {
+            Channel.Frame frame = channel.receive();
+            try {
+                DataInputStream payload = frame.getPayload();
+                switch (frame.getType()) {
+                    case INVOKE_MAIN:
+                        invokeMain(payload);
+                        channel.send(frame.getCallId(), SUCCEEDED);
+                        break;
+                    case BIND:
+                        bind(payload);
+                        channel.send(frame.getCallId(), SUCCEEDED);
+                        break;
+                    case INVOKE_METHOD:
+                        invokeMethod(channel, frame.getCallId(), payload);
+                        break;
+                    case INVOKE_ISOLATABLE:
+                        reply(channel, frame.getCallId(), invokeIsolatable(payload), null);
+                        break;
+                    default:
+                        throw new IOException("Unknown frame type " + frame.getType());
+                }
+            } catch (Throwable t) {
+                channel.send(frame.getCallId(), FAILED, failure(t));
+            }
+        }
+    }
+
+    private static void invokeMain(DataInputStream payload) throws Throwable {
+        String mainClassName = payload.readUTF();
+        String[] mainClassArguments = new String[payload.readInt()];
+        for (int i = 0; i < mainClassArguments.length; i++)
+            mainClassArguments[i] = payload.readUTF();
+
+        try {
+            Class.forName(mainClassName).getMethod("main", String[].class)
+                    .invoke(null, new Object[]{mainClassArguments});
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Invokes the static main method of an isolatable class or, if it has none, the call method of a new instance.
+     */
+    private static Object invokeIsolatable(DataInputStream payload) throws Throwable {
+        Class<?> isolatableClass = Class.forName(payload.readUTF());
+        Object[] args = new Object[payload.readInt()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = Codec.read(payload);
+
+        try {
+            Method mainMethod = getMethod(isolatableClass, "main", String[].class);
+            if (mainMethod != null && Modifier.isStatic(mainMethod.getModifiers())) {
+                String[] mainClassArguments = new String[args.length];
+                for (int i = 0; i < args.length; i++)
+                    mainClassArguments[i] = String.valueOf(args[i]);
+                mainMethod.invoke(null, new Object[]{mainClassArguments});
+                return null;
+            }
+            Method callMethod = getMethod(isolatableClass, "call", Object[].class);
+            if (callMethod == null)
+                throw new IllegalArgumentException("The class '" + isolatableClass.getName()
+                        + "' contained neither a static main(String[]) nor a call(Object...) method");
+            return callMethod.invoke(isolatableClass.getDeclaredConstructor().newInstance(), new Object[]{args});
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Method getMethod(Class<?> clazz, String name, Class<?> parameterType) {
+        for (Method method : clazz.getMethods())
+            if (method.getName().equals(name) && Arrays.equals(method.getParameterTypes(), new Class<?>[]{parameterType}))
+                return method;
+        return null;
+    }
+
+    private static void bind(DataInputStream payload) throws Exception {
+        Class<?> type = Class.forName(payload.readUTF());
+        Class<?> implementation = Class.forName(payload.readUTF());
+        if (!type.isAssignableFrom(implementation))
+            throw new IllegalArgumentException(implementation.getName() + " does not implement " + type.getName());
+        boundObject = implementation.getDeclaredConstructor().newInstance();
+        boundMethods = remoteMethods(type);
+    }
+
+    /**
+     * Invokes a method of the bound object. Calls are served in order of arrival, but a method which returns a
+     * {@link CompletionStage} is answered only once that stage completed, allowing for several calls to be in flight.
+     */
+    private static void invokeMethod(Channel channel, int callId, DataInputStream payload) throws Throwable {
+        if (boundObject == null)
+            throw new IllegalStateException("Worker is not bound to an object");
+
+        Method method = boundMethods[payload.readShort()];
+        Object[] args = new Object[payload.readUnsignedByte()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = Codec.read(payload);
+
+        Object result;
+        try {
+            result = method.invoke(boundObject, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        if (result instanceof CompletionStage)
+            ((CompletionStage<?>) result).whenComplete((value, t) -> reply(channel, callId, value, t));
+        else
+            reply(channel, callId, result, null);
+    }
+
+    private static void reply(Channel channel, int callId, Object value, Throwable t) {
+        try {
+            if (t == null) {
+                byte[] payload;
+                try {
+                    payload = Channel.payload(out -> Codec.write(out, value));
+                } catch (IOException e) {
+                    channel.send(callId, FAILED, failure(e));
+                    return;
+                }
+                channel.send(callId, SUCCEEDED, payload);
+            } else {
+                channel.send(callId, FAILED, failure(t instanceof CompletionException && t.getCause() != null
+                        ? t.getCause() : t));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not reply to call " + callId + ": " + e);
+        }
+    }
+
+    private static String describe(Throwable t) {
+        StringWriter stackTrace = new StringWriter();
+        t.printStackTrace(new PrintWriter(stackTrace));
+        String description = stackTrace.toString();
+        return description.length() > MAX_FAILURE_LENGTH ? description.substring(0, MAX_FAILURE_LENGTH) : description;
+    }
+}
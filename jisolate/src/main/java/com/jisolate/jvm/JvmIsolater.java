@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import com.jisolate.Isolater;
+import com.jisolate.metrics.Metrics;
+import com.jisolate.util.ClassPathUtil;
+import com.jisolate.util.IsolationExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Isolater which relies on spawning child JVMs to ensure isolation.
+ */
+public class JvmIsolater implements Isolater {
+
+    public static class Builder {
+
+        private final JvmIsolater template = new JvmIsolater();
+
+        public JvmIsolate isolate() {
+            return template.isolate();
+        }
+
+        public <T> T isolate(Class<T> type) {
+            return template.isolate(type);
+        }
+
+        public Builder withAdditionalCommandLineArguments(
+                Collection<String> additionalCommandLineArguments) {
+            template.additionalCommandLineArguments = additionalCommandLineArguments;
+            return this;
+        }
+
+        public Builder withInheritClassPath(boolean inheritClassPath) {
+            template.inheritClasspath = inheritClassPath;
+            return this;
+        }
+
+        /**
+         * Whether an inherited class path is reduced to the JARs which contain the classes reachable from the main
+         * class, as found by analyzing their bytecode. This shortens the class path of each child JVM and thus speeds
+         * up its class loading. Disabled by default.
+         */
+        public Builder withMinimalClassPath(boolean minimalClassPath) {
+            template.minimalClassPath = minimalClassPath;
+            return this;
+        }
+
+        /**
+         * Classes which are only loaded reflectively by a child JVM and thus need to be kept on a minimal class path,
+         * together with all classes they reference.
+         */
+        public Builder withClassPathRoots(String... classNames) {
+            template.classPathRootClassNames = Arrays.asList(classNames);
+            return this;
+        }
+
+        public Builder withInheritSystemProperties(List<String> inheritedSystemPropertyNames) {
+            template.inheritedSystemPropertyNames = inheritedSystemPropertyNames;
+            return this;
+        }
+
+        /**
+         * Supplies the sink for the stdout of each child JVM. By default, each line is logged at info level.
+         */
+        public Builder withStdOut(Supplier<? extends OutputSink> stdOutSinks) {
+            template.stdOutSinks = requireNonNull(stdOutSinks);
+            return this;
+        }
+
+        /**
+         * Supplies the sink for the stderr of each child JVM. By default, each line is logged at error level.
+         */
+        public Builder withStdErr(Supplier<? extends OutputSink> stdErrSinks) {
+            template.stdErrSinks = requireNonNull(stdErrSinks);
+            return this;
+        }
+
+        /**
+         * Time which a child JVM is given to terminate after being asked to, before it is terminated forcibly.
+         * Defaults to 10s.
+         */
+        public Builder withShutdownTimeout(Duration shutdownTimeout) {
+            template.shutdownTimeout = requireNonNull(shutdownTimeout);
+            return this;
+        }
+
+        /**
+         * Whether child JVMs use a dynamic AppCDS archive of the classes loaded by their class path and main class.
+         * The first child JVM creates the archive when it exits; later ones start faster by mapping it. Requires Java
+         * 13 or later and is ignored otherwise. Disabled by default.
+         */
+        public Builder withClassDataSharing(boolean classDataSharing) {
+            template.classDataSharing = classDataSharing;
+            if (classDataSharing && !ClassDataSharing.isSupported())
+                log.warn("Class data sharing archives require Java 13 or later and are not used");
+            return this;
+        }
+
+        /**
+         * Memory and CPU limits of each child JVM, e.g. {@link ResourceLimits#automatic(int)}. Additional command line
+         * arguments take precedence over them. By default, no limits are set.
+         */
+        public Builder withResourceLimits(ResourceLimits resourceLimits) {
+            template.resourceLimits = requireNonNull(resourceLimits);
+            return this;
+        }
+
+        public Builder withMainClass(Class<?> mainClass) {
+            template.mainClassName = mainClass.getName();
+            return this;
+        }
+
+        public Builder withMainClassArguments(Collection<String> mainClassArguments) {
+            template.mainClassArguments = mainClassArguments;
+            return this;
+        }
+
+        public Builder withMainClassArguments(String... mainClassArguments) {
+            template.mainClassArguments = Arrays.asList(mainClassArguments);
+            return this;
+        }
+
+        public Builder withMainClassName(String mainClassName) {
+            template.mainClassName = mainClassName;
+            return this;
+        }
+
+        /**
+         * Returns a builder for a pool of pre-spawned child JVMs which inherit this builder's configuration.
+         */
+        public JvmIsolatePool.Builder pool() {
+            return new JvmIsolatePool.Builder(template);
+        }
+
+        /**
+         * Returns the configured isolater, which can run any number of invocations with different arguments.
+         */
+        public JvmIsolater build() {
+            requireNonNull(template.mainClassName, "The 'mainClassName' property is mandatory");
+            return new JvmIsolater(template);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(JvmIsolater.class);
+    private static final int MAX_CLASS_PATH_ARGUMENT_LENGTH = 8192;
+    private static final Duration REMOTE_ISOLATE_SPAWN_TIMEOUT = Duration.ofSeconds(30);
+    private static final ExecutorService invocationExecutor = IsolationExecutors.newBoundedExecutor("JvmIsolater-",
+            IsolationExecutors.getDefaultParallelism());
+
+    private Collection<String> additionalCommandLineArguments;
+    private boolean classDataSharing;
+    private Collection<String> classPathRootClassNames = emptyList();
+    private boolean inheritClasspath = true;
+    private Collection<String> inheritedSystemPropertyNames;
+    private Collection<String> mainClassArguments;
+    private String mainClassName;
+    private boolean minimalClassPath;
+    private ResourceLimits resourceLimits;
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+    private Supplier<? extends OutputSink> stdErrSinks = () -> OutputSinks.lines(lines -> lines.forEach(log::error));
+    private Supplier<? extends OutputSink> stdOutSinks = () -> OutputSinks.lines(lines -> lines.forEach(log::info));
+
+    private JvmIsolater() {
+    }
+
+    private JvmIsolater(JvmIsolater template) {
+        additionalCommandLineArguments = template.additionalCommandLineArguments;
+        classDataSharing = template.classDataSharing;
+        classPathRootClassNames = template.classPathRootClassNames;
+        inheritClasspath = template.inheritClasspath;
+        inheritedSystemPropertyNames = template.inheritedSystemPropertyNames;
+        mainClassArguments = template.mainClassArguments;
+        mainClassName = template.mainClassName;
+        minimalClassPath = template.minimalClassPath;
+        resourceLimits = template.resourceLimits;
+        shutdownTimeout = template.shutdownTimeout;
+        stdErrSinks = template.stdErrSinks;
+        stdOutSinks = template.stdOutSinks;
+    }
+
+    public JvmIsolate isolate() {
+        ChannelAcceptor channelAcceptor = null;
+        String token = null;
+        try {
+            requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+            channelAcceptor = ChannelAcceptor.getInstance();
+            CompletableFuture<Socket> connection = new CompletableFuture<>();
+            long startNanos = System.nanoTime();
+            // A child JVM is ready once it connects back, which only happens if it uses the ParentChannel
+            connection.thenRun(() -> Metrics.timer(Metrics.JVM_SPAWN).recordSince(startNanos));
+            token = channelAcceptor.register(connection::complete);
+            final Process process = start(mainClassName, mainClassArguments, asList(
+                    format("-D%s=%d", ParentChannel.PORT_PROPERTY, channelAcceptor.getPort()),
+                    format("-D%s=%s", ParentChannel.TOKEN_PROPERTY, token)));
+            log.info("Performed JVM isolation of {}", mainClassName);
+            return new JvmIsolate(process, shutdownTimeout, channelAcceptor, token, connection);
+        } catch (Exception e) {
+            if (token != null)
+                channelAcceptor.unregister(token);
+            throw new RuntimeException("Isolation of JVM failed", e);
+        }
+    }
+
+    /**
+     * Spawns a child JVM which creates an instance of the main class using its no-arg constructor. Returns a proxy
+     * which implements the specified interface by forwarding each call to that instance.
+     * <p>
+     * Arguments and results must be primitives, strings, byte arrays or serializable. Calls are executed one after the
+     * other, but a method which returns a {@link java.util.concurrent.CompletableFuture} doesn't block its invoker,
+     * so many calls can be in flight. Cast the proxy to {@link RemoteIsolate} to terminate the child JVM.
+     */
+    public <T> T isolate(Class<T> type) {
+        if (!type.isInterface())
+            throw new IllegalArgumentException(type.getName() + " is not an interface");
+        try {
+            requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+            T proxy = RemoteInvocationHandler.create(this, type, REMOTE_ISOLATE_SPAWN_TIMEOUT);
+            log.info("Performed JVM isolation of {} as {}", mainClassName, type.getName());
+            return proxy;
+        } catch (Exception e) {
+            throw new RuntimeException("Isolation of JVM failed", e);
+        }
+    }
+
+    /**
+     * Spawns a child JVM which invokes the main class, i.e. its static {@code main(String[])} method with the
+     * arguments converted to strings or, if it has none, the {@code call(Object...)} method of a new instance. The
+     * child JVM is terminated once the invocation has returned. At most
+     * {@link IsolationExecutors#getDefaultParallelism()} such child JVMs run at once.
+     */
+    @Override
+    public CompletableFuture<Object> invoke(Object... arguments) {
+        requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+        return CompletableFuture.supplyAsync(() -> {
+            try (WorkerJvm jvm = WorkerJvm.spawn(this, REMOTE_ISOLATE_SPAWN_TIMEOUT)) {
+                Object result = jvm.invokeIsolatable(mainClassName, arguments);
+                log.info("Performed JVM isolation of {}", mainClassName);
+                return result;
+            } catch (IOException e) {
+                throw new RuntimeException("Isolation of JVM failed", e);
+            }
+        }, invocationExecutor);
+    }
+
+    String getMainClassName() {
+        return mainClassName;
+    }
+
+    Collection<String> getMainClassArguments() {
+        return mainClassArguments;
+    }
+
+    /**
+     * Starts a child JVM for the specified main class and hands its stdout and stderr over to the configured sinks.
+     *
+     * @param systemProperties additional system properties, each in the form {@code -Dname=value}
+     */
+    Process start(String mainClassName, Collection<String> mainClassArguments, Collection<String> systemProperties)
+            throws IOException {
+        String classPath = inheritClasspath ? getInheritedClasspath(mainClassName) : null;
+        String childClassPath = classPath != null ? classPath : getExplicitClasspath();
+        ClassDataSharing.Launch classDataSharingLaunch = classDataSharing && childClassPath != null
+                ? ClassDataSharing.prepare(childClassPath, mainClassName) : null;
+        Process process = new ProcessBuilder(buildCommandLine(mainClassName, mainClassArguments, systemProperties,
+                classPath, classDataSharingLaunch)).start();
+        handleStdOutAndStdErrOf(process, mainClassName);
+        Metrics.counter(Metrics.LIVE_JVM_ISOLATES).increment();
+        process.onExit().thenRun(() -> Metrics.counter(Metrics.LIVE_JVM_ISOLATES).decrement());
+        if (classDataSharingLaunch != null)
+            classDataSharingLaunch.started(process);
+        return process;
+    }
+
+    /**
+     * Returns the {@code java} executable of the Java installation which runs this JVM. Child JVMs use it rather than
+     * the one on the {@code PATH}, since JVM options such as those for class data sharing depend on the Java version.
+     */
+    static String getJavaExecutable() {
+        return new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath();
+    }
+
+    private List<String> buildCommandLine(String mainClassName, Collection<String> mainClassArguments,
+                                          Collection<String> systemProperties, String classPath,
+                                          ClassDataSharing.Launch classDataSharingLaunch) throws IOException {
+        List<String> commandLine = new ArrayList<>();
+        commandLine.add(getJavaExecutable());
+
+        if (classDataSharingLaunch != null)
+            commandLine.addAll(classDataSharingLaunch.getArguments());
+
+        if (resourceLimits != null)
+            commandLine.addAll(resourceLimits.getArguments());
+
+        if (additionalCommandLineArguments != null)
+            commandLine.addAll(additionalCommandLineArguments);
+
+        if (classPath != null)
+            commandLine.addAll(getClassPathArguments(classPath));
+
+        if (inheritedSystemPropertyNames != null && !inheritedSystemPropertyNames.isEmpty())
+            commandLine.addAll(getInheritedSystemProperties());
+
+        commandLine.addAll(systemProperties);
+
+        requireNonNull(mainClassName, "The 'mainClassName' property is mandatory");
+        commandLine.add(mainClassName);
+
+        if (mainClassArguments != null && !mainClassArguments.isEmpty())
+            commandLine.addAll(mainClassArguments);
+
+        log.debug("Command line: {}", commandLine);
+        return commandLine;
+    }
+
+    private String getClasspath() {
+        return ClassPathUtil.getClassPath();
+    }
+
+    /**
+     * Returns the arguments which set the class path of a child JVM. A class path which may exceed the command line
+     * length limit of the OS is passed via an argument file.
+     */
+    static List<String> getClassPathArguments(String classPath) throws IOException {
+        if (classPath.length() <= MAX_CLASS_PATH_ARGUMENT_LENGTH)
+            return asList("-cp", classPath);
+
+        String contents = "-cp \"" + classPath.replace("\\", "\\\\").replace("\"", "\\\"") + "\"\n";
+        Path argumentFileDir = Paths.get(System.getProperty("java.io.tmpdir"), "jisolate-args");
+        Path argumentFile = argumentFileDir.resolve(
+                format("classpath-%x-%d.args", contents.hashCode(), contents.length()));
+        if (!Files.isRegularFile(argumentFile)
+                || !new String(Files.readAllBytes(argumentFile), StandardCharsets.UTF_8).equals(contents)) {
+            Files.createDirectories(argumentFileDir);
+            Path tempFile = Files.createTempFile(argumentFileDir, argumentFile.getFileName().toString(), ".tmp");
+            Files.write(tempFile, contents.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, argumentFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return singletonList("@" + argumentFile);
+    }
+
+    private String getInheritedClasspath(String mainClassName) {
+        if (!minimalClassPath)
+            return getClasspath();
+        Set<String> rootClassNames = new LinkedHashSet<>();
+        rootClassNames.add(mainClassName);
+        if (this.mainClassName != null)
+            rootClassNames.add(this.mainClassName);
+        rootClassNames.addAll(classPathRootClassNames);
+        return ClassPathClosure.get(getClasspath(), rootClassNames);
+    }
+
+    /**
+     * Returns the class path of a child JVM which doesn't inherit it: the one set via the additional command line
+     * arguments or otherwise, like the {@code java} launcher, the {@code CLASSPATH} environment variable or the
+     * working directory. Returns {@code null} if an argument file may set the class path.
+     */
+    String getExplicitClasspath() {
+        if (additionalCommandLineArguments != null) {
+            Iterator<String> arguments = additionalCommandLineArguments.iterator();
+            while (arguments.hasNext()) {
+                String argument = arguments.next();
+                if ((argument.equals("-cp") || argument.equals("-classpath") || argument.equals("--class-path"))
+                        && arguments.hasNext())
+                    return arguments.next();
+                if (argument.startsWith("--class-path="))
+                    return argument.substring("--class-path=".length());
+                if (argument.startsWith("@"))
+                    return null;
+            }
+        }
+        String classPath = System.getenv("CLASSPATH");
+        return classPath == null || classPath.isEmpty() ? "." : classPath;
+    }
+
+    private Collection<String> getInheritedSystemProperties() {
+        return inheritedSystemPropertyNames.stream().map(n -> String.format("-D%s=%s", n, System.getProperty(n))).collect(toList());
+    }
+
+    private void handleStdOutAndStdErrOf(Process process, String mainClassName) {
+        OutputReactor.register("stdout of " + mainClassName, process, process.getInputStream(), stdOutSinks.get());
+        OutputReactor.register("stderr of " + mainClassName, process, process.getErrorStream(), stdErrSinks.get());
+    }
+}
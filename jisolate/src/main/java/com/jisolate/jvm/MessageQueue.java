@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Messages received from a child JVM which are buffered until they are consumed via a stream.
+ */
+class MessageQueue {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> messages = new LinkedBlockingQueue<>();
+
+    void add(Object message) {
+        messages.add(message);
+    }
+
+    void end() {
+        messages.add(END);
+    }
+
+    /**
+     * Returns a stream which blocks until the next message has been received and ends once the child JVM has closed
+     * its channel or terminated. Each message is consumed by only one stream.
+     */
+    Stream<Object> stream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Object>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Object> action) {
+                Object message;
+                try {
+                    message = messages.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted whilst waiting for message from child JVM", e);
+                }
+                if (message == END) {
+                    // Ends all other streams as well
+                    messages.add(END);
+                    return false;
+                }
+                action.accept(message);
+                return true;
+            }
+        }, false);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single thread which reads the stdout and stderr of all child JVMs and hands their output to {@link OutputSink}s.
+ * <p>
+ * Process streams can't be registered with a selector, so the reactor polls them for available bytes and backs off
+ * whilst none of them has any. Bytes are read into one buffer which is reused for all streams.
+ */
+final class OutputReactor implements Runnable {
+
+    private static class Registration {
+        private final InputStream in;
+        private final String name;
+        private final Process process;
+        private OutputSink sink;
+
+        Registration(String name, Process process, InputStream in, OutputSink sink) {
+            this.name = name;
+            this.process = process;
+            this.in = in;
+            this.sink = sink;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final Logger log = LoggerFactory.getLogger(OutputReactor.class);
+    private static final OutputReactor instance = new OutputReactor();
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Queue<Registration> newRegistrations = new ConcurrentLinkedQueue<>();
+    private final List<Registration> registrations = new ArrayList<>();
+    private Thread thread;
+
+    private OutputReactor() {
+    }
+
+    /**
+     * Reads the stream of the process until it ends and writes its bytes to the sink.
+     */
+    static void register(String name, Process process, InputStream in, OutputSink sink) {
+        instance.newRegistrations.add(new Registration(name, process, in, sink));
+        instance.wakeUp();
+    }
+
+    private synchronized void wakeUp() {
+        if (thread == null) {
+            thread = new Thread(this, "OutputReactor");
+            thread.setDaemon(true);
+            thread.setContextClassLoader(OutputReactor.class.getClassLoader());
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        long idleNanos = MIN_IDLE_NANOS;
+        while (true) {
+            Registration newRegistration;
+            while ((newRegistration = newRegistrations.poll()) != null)
+                registrations.add(newRegistration);
+
+            boolean read = false;
+            for (Iterator<Registration> iterator = registrations.iterator(); iterator.hasNext(); ) {
+                Registration registration = iterator.next();
+                try {
+                    int bytesRead = read(registration);
+                    if (bytesRead < 0) {
+                        iterator.remove();
+                        close(registration);
+                    } else if (bytesRead > 0) {
+                        read = true;
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not read {}", registration.name, e);
+                    iterator.remove();
+                    close(registration);
+                }
+            }
+
+            if (read) {
+                idleNanos = MIN_IDLE_NANOS;
+            } else if (registrations.isEmpty() && newRegistrations.isEmpty()) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, idleNanos);
+                idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes read, or -1 at the end of the stream. Never blocks: once the process has died, its
+     * stream ends with the bytes which are available, since a process it spawned may still hold the pipe open.
+     */
+    private int read(Registration registration) throws IOException {
+        int available = registration.in.available();
+        if (available <= 0)
+            return registration.process.isAlive() ? 0 : -1;
+
+        buffer.clear();
+        int bytesRead = registration.in.read(buffer.array(), 0, Math.min(available, BUFFER_SIZE));
+        if (bytesRead > 0)
+            Metrics.counter(Metrics.JVM_OUTPUT_BYTES).add(bytesRead);
+        if (bytesRead > 0 && registration.sink != null) {
+            buffer.limit(bytesRead);
+            try {
+                registration.sink.write(buffer);
+            } catch (Exception e) {
+                // The output is still read, so that the child JVM doesn't block on a full pipe
+                log.warn("Output sink of {} failed and is discarded", registration.name, e);
+                registration.sink = null;
+            }
+        }
+        return bytesRead;
+    }
+
+    private void close(Registration registration) {
+        try {
+            registration.in.close();
+            if (registration.sink != null)
+                registration.sink.close();
+        } catch (Exception e) {
+            log.debug("Could not close {}", registration.name, e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the bytes which a child JVM writes to its stdout or stderr. All sinks are called by a single reactor thread
+ * which serves the output of all child JVMs, so they should not block.
+ */
+public interface OutputSink {
+
+    /**
+     * Called with the next bytes read from the stream, between the buffer's position and limit. The buffer is reused
+     * once this method returns.
+     */
+    void write(ByteBuffer bytes) throws IOException;
+
+    /**
+     * Called once the stream has ended.
+     */
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Creates the {@link OutputSink}s which are used for the stdout and stderr of child JVMs.
+ */
+public final class OutputSinks {
+
+    private OutputSinks() {
+    }
+
+    /**
+     * Creates a sink which writes the bytes to the specified stream as they are, without decoding them.
+     */
+    public static OutputSink forward(OutputStream out) {
+        return new OutputSink() {
+            @Override
+            public void write(ByteBuffer bytes) throws IOException {
+                out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                bytes.position(bytes.limit());
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Creates a sink which decodes lines using the default charset and passes them on in batches: each batch contains
+     * the lines which were completed by the bytes read at once. The list is reused once the handler returns.
+     */
+    public static OutputSink lines(Consumer<List<String>> lineHandler) {
+        return lines(Charset.defaultCharset(), lineHandler);
+    }
+
+    public static OutputSink lines(Charset charset, Consumer<List<String>> lineHandler) {
+        return new LineSink(charset, lineHandler);
+    }
+
+    /**
+     * Creates a sink which keeps the most recent bytes, up to the specified capacity.
+     */
+    public static RingBufferSink ringBuffer(int capacity) {
+        return new RingBufferSink(capacity);
+    }
+
+    private static class LineSink implements OutputSink {
+        private final Charset charset;
+        private final Consumer<List<String>> lineHandler;
+        private final List<String> lines = new ArrayList<>();
+        private byte[] partialLine = new byte[256];
+        private int partialLineLength;
+
+        LineSink(Charset charset, Consumer<List<String>> lineHandler) {
+            this.charset = charset;
+            this.lineHandler = lineHandler;
+        }
+
+        @Override
+        public void write(ByteBuffer bytes) {
+            byte[] array = bytes.array();
+            int lineStart = bytes.arrayOffset() + bytes.position();
+            int end = bytes.arrayOffset() + bytes.limit();
+            for (int i = lineStart; i < end; i++) {
+                if (array[i] == '\n') {
+                    if (partialLineLength == 0) {
+                        addLine(array, lineStart, i - lineStart);
+                    } else {
+                        appendToPartialLine(array, lineStart, i - lineStart);
+                        addLine(partialLine, 0, partialLineLength);
+                        partialLineLength = 0;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            appendToPartialLine(array, lineStart, end - lineStart);
+            bytes.position(bytes.limit());
+            handleLines();
+        }
+
+        @Override
+        public void close() {
+            if (partialLineLength > 0) {
+                addLine(partialLine, 0, partialLineLength);
+                partialLineLength = 0;
+                handleLines();
+            }
+        }
+
+        private void addLine(byte[] bytes, int offset, int length) {
+            if (length > 0 && bytes[offset + length - 1] == '\r')
+                length--;
+            lines.add(new String(bytes, offset, length, charset));
+        }
+
+        private void appendToPartialLine(byte[] bytes, int offset, int length) {
+            if (partialLineLength + length > partialLine.length)
+                partialLine = Arrays.copyOf(partialLine, Math.max(partialLine.length * 2, partialLineLength + length));
+            System.arraycopy(bytes, offset, partialLine, partialLineLength, length);
+            partialLineLength += length;
+        }
+
+        private void handleLines() {
+            if (!lines.isEmpty()) {
+                lineHandler.accept(lines);
+                lines.clear();
+            }
+        }
+    }
+}
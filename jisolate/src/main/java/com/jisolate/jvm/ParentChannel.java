@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Channel from a child JVM, which was spawned by {@link JvmIsolater#isolate()}, back to its parent. It carries
+ * structured results and events out-of-band, i.e. without passing them through stdout, and the parent receives them
+ * via {@link JvmIsolate#results()} and {@link JvmIsolate#events()}.
+ * <p>
+ * Results and events must be primitives, strings, byte arrays or serializable. The channel connects on first use.
+ */
+public final class ParentChannel {
+
+    static final String PORT_PROPERTY = "jisolate.channel.port";
+    static final String TOKEN_PROPERTY = "jisolate.channel.token";
+
+    // Frame types above those of the JvmIsolateWorker protocol, so that the two protocols can't be confused
+    static final byte RESULT = 64;
+    static final byte EVENT = 65;
+
+    private static Channel channel;
+
+    private ParentChannel() {
+    }
+
+    /**
+     * Returns whether this JVM was spawned by a parent which listens for results and events.
+     */
+    public static boolean isAvailable() {
+        return System.getProperty(PORT_PROPERTY) != null;
+    }
+
+    public static void sendResult(Object result) {
+        send(RESULT, requireNonNull(result));
+    }
+
+    public static void sendEvent(Object event) {
+        send(EVENT, requireNonNull(event));
+    }
+
+    private static void send(byte type, Object message) {
+        try {
+            getChannel().send(0, type, Channel.payload(out -> Codec.write(out, message)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not send message to parent JVM", e);
+        }
+    }
+
+    private static synchronized Channel getChannel() throws IOException {
+        if (channel == null) {
+            if (!isAvailable())
+                throw new IllegalStateException("This JVM was not spawned by a Jisolate parent JVM");
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(System.getProperty(PORT_PROPERTY)));
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(System.getProperty(TOKEN_PROPERTY));
+            out.flush();
+            channel = new Channel(socket);
+        }
+        return channel;
+    }
+}
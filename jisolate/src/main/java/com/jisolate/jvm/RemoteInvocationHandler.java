@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.jisolate.jvm.JvmIsolateWorker.BIND;
+import static com.jisolate.jvm.JvmIsolateWorker.INVOKE_METHOD;
+import static com.jisolate.jvm.JvmIsolateWorker.SUCCEEDED;
+
+/**
+ * Forwards the calls of a proxy to the object which a {@link JvmIsolateWorker} is bound to. Calls are pipelined: they
+ * are sent without waiting for the results of earlier calls, and their results are matched up by call ID.
+ */
+class RemoteInvocationHandler implements InvocationHandler, RemoteIsolate {
+
+    private static class PendingCall {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteInvocationHandler.class);
+
+    private final LongAdder calls = new LongAdder();
+    private final WorkerJvm jvm;
+    private final AtomicLong maxRoundTripNanos = new AtomicLong();
+    private final Map<Method, Integer> methodIndices = new HashMap<>();
+    private final ConcurrentMap<Integer, PendingCall> pendingCalls = new ConcurrentHashMap<>();
+    private final LongAdder totalRoundTripNanos = new LongAdder();
+    private final SerializationFilter serializationFilter;
+    private final Class<?> type;
+    private volatile boolean closed;
+    private volatile IOException terminationCause;
+
+    private RemoteInvocationHandler(WorkerJvm jvm, Class<?> type) {
+        this.jvm = jvm;
+        this.type = type;
+        this.serializationFilter = new SerializationFilter(type);
+        Method[] methods = JvmIsolateWorker.remoteMethods(type);
+        for (int i = 0; i < methods.length; i++)
+            methodIndices.put(methods[i], i);
+
+        Thread reader = new Thread(this::read, "RemoteIsolate-" + type.getSimpleName() + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Spawns a child JVM, binds it to a new instance of the isolater's main class and returns a proxy for it.
+     */
+    static <T> T create(JvmIsolater isolater, Class<T> type, Duration timeout) throws IOException {
+        WorkerJvm jvm = WorkerJvm.spawn(isolater, timeout);
+        try {
+            RemoteInvocationHandler handler = new RemoteInvocationHandler(jvm, type);
+            handler.bind(isolater.getMainClassName(), timeout);
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type, RemoteIsolate.class},
+                    handler));
+        } catch (IOException | RuntimeException e) {
+            jvm.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return toString();
+            }
+        }
+
+        Integer methodIndex = methodIndices.get(method);
+        if (methodIndex == null) {
+            try {
+                return method.invoke(this, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        CompletableFuture<Object> result = call(INVOKE_METHOD, Channel.payload(out -> {
+            out.writeShort(methodIndex);
+            out.writeByte(args == null ? 0 : args.length);
+            if (args != null)
+                for (Object arg : args)
+                    Codec.write(out, arg);
+        }));
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType != Object.class && returnType.isAssignableFrom(CompletableFuture.class))
+            return result;
+
+        Object value;
+        try {
+            value = result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+        if (value == null && returnType.isPrimitive() && returnType != void.class)
+            throw new IllegalStateException(String.format("Child JVM returned null for %s, whose return type is %s",
+                    method, returnType));
+        return value;
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(calls.sum(), totalRoundTripNanos.sum(), maxRoundTripNanos.get());
+    }
+
+    public void close() {
+        closed = true;
+        jvm.close();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteIsolate{type=" + type.getName() + ", process=" + jvm.getProcess() + "}";
+    }
+
+    private void bind(String implementationClassName, Duration timeout) throws IOException {
+        try {
+            call(BIND, Channel.payload(out -> {
+                out.writeUTF(type.getName());
+                out.writeUTF(implementationClassName);
+            })).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Could not bind child JVM to a new instance of " + implementationClassName,
+                    e instanceof ExecutionException ? e.getCause() : e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst binding child JVM", e);
+        }
+    }
+
+    private CompletableFuture<Object> call(byte type, byte[] payload) {
+        if (closed)
+            throw new IllegalStateException("Remote isolate is closed");
+
+        int callId = jvm.nextCallId();
+        PendingCall call = new PendingCall();
+        pendingCalls.put(callId, call);
+        try {
+            if (terminationCause != null)
+                throw terminationCause;
+            jvm.getChannel().send(callId, type, payload);
+        } catch (IOException e) {
+            pendingCalls.remove(callId);
+            call.future.completeExceptionally(e);
+        }
+        return call.future;
+    }
+
+    private void read() {
+        try {
+            while (true) {
+                Channel.Frame frame = jvm.getChannel().receive();
+                PendingCall call = pendingCalls.remove(frame.getCallId());
+                if (call == null) {
+                    log.warn("Received result for unknown call {}", frame.getCallId());
+                    continue;
+                }
+
+                long roundTripNanos = System.nanoTime() - call.startNanos;
+                calls.increment();
+                totalRoundTripNanos.add(roundTripNanos);
+                maxRoundTripNanos.accumulateAndGet(roundTripNanos, Math::max);
+
+                DataInputStream payload = frame.getPayload();
+                try {
+                    if (frame.getType() == SUCCEEDED)
+                        call.future.complete(payload.available() == 0 ? null
+                                : Codec.read(payload, serializationFilter));
+                    else
+                        call.future.completeExceptionally(WorkerJvm.readFailure(payload, serializationFilter));
+                } catch (IOException e) {
+                    call.future.completeExceptionally(e);
+                }
+            }
+        } catch (IOException e) {
+            terminationCause = closed ? new IOException("Remote isolate was closed") :
+                    new IOException("Connection to child JVM was lost", e);
+            pendingCalls.values().forEach(call -> call.future.completeExceptionally(terminationCause));
+            pendingCalls.clear();
+            if (!closed)
+                log.warn("Connection to child JVM {} was lost", jvm.getProcess(), e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implemented by every proxy returned from {@link JvmIsolater#isolate(Class)}. Cast the proxy to this interface to
+ * terminate its child JVM or to obtain the round-trip latency of its calls.
+ */
+public interface RemoteIsolate extends Closeable {
+
+    /**
+     * Snapshot of the calls performed via a proxy.
+     */
+    class Statistics {
+        private final long calls;
+        private final long maxRoundTripNanos;
+        private final long totalRoundTripNanos;
+
+        Statistics(long calls, long totalRoundTripNanos, long maxRoundTripNanos) {
+            this.calls = calls;
+            this.totalRoundTripNanos = totalRoundTripNanos;
+            this.maxRoundTripNanos = maxRoundTripNanos;
+        }
+
+        /**
+         * Number of completed calls.
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Average time between sending a call to the child JVM and receiving its result.
+         */
+        public long getAverageRoundTrip(TimeUnit unit) {
+            return calls == 0 ? 0 : unit.convert(totalRoundTripNanos / calls, TimeUnit.NANOSECONDS);
+        }
+
+        public long getMaxRoundTrip(TimeUnit unit) {
+            return unit.convert(maxRoundTripNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics{calls=%d, averageRoundTrip=%dus, maxRoundTrip=%dus}", calls,
+                    getAverageRoundTrip(TimeUnit.MICROSECONDS), getMaxRoundTrip(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    Statistics getStatistics();
+
+    /**
+     * Terminates the child JVM. Calls which are still in flight fail.
+     */
+    void close();
+}
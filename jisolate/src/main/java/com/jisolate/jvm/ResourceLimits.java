@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Memory and CPU limits of a child JVM, which keep co-located child JVMs from sizing their heap and GC threads as if
+ * each of them owned the machine. Limits which aren't set are left to the child JVM's ergonomics.
+ * <p>
+ * {@link #automatic(int)} splits the memory and CPUs of the container, as set by its cgroup v2 limits, or otherwise of
+ * the host across a number of child JVMs. The memory which the parent JVM may use and some headroom are reserved
+ * first.
+ */
+public final class ResourceLimits {
+
+    public static class Builder {
+        private int activeProcessorCount;
+        private int gcThreads;
+        private long maxHeapSize;
+        private long maxMetaspaceSize;
+
+        public ResourceLimits build() {
+            return new ResourceLimits(this);
+        }
+
+        /**
+         * Number of CPUs which the child JVM assumes to have, which also determines the size of its thread pools.
+         */
+        public Builder withActiveProcessorCount(int activeProcessorCount) {
+            this.activeProcessorCount = requirePositive(activeProcessorCount, "activeProcessorCount");
+            return this;
+        }
+
+        /**
+         * Number of parallel GC threads. The number of concurrent GC threads is derived from it by the child JVM.
+         */
+        public Builder withGcThreads(int gcThreads) {
+            this.gcThreads = requirePositive(gcThreads, "gcThreads");
+            return this;
+        }
+
+        public Builder withMaxHeapSize(long maxHeapSizeInBytes) {
+            this.maxHeapSize = requirePositive(maxHeapSizeInBytes, "maxHeapSize");
+            return this;
+        }
+
+        public Builder withMaxMetaspaceSize(long maxMetaspaceSizeInBytes) {
+            this.maxMetaspaceSize = requirePositive(maxMetaspaceSizeInBytes, "maxMetaspaceSize");
+            return this;
+        }
+    }
+
+    private static final String CGROUP_ROOT = "/sys/fs/cgroup";
+    private static final double HEADROOM_SHARE = 0.1;
+    private static final double HEAP_SHARE = 0.6;
+    private static final double METASPACE_SHARE = 0.1;
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final long MIN_HEAP_SIZE = 16 * MEGABYTE;
+    private static final long MIN_METASPACE_SIZE = 32 * MEGABYTE;
+    private static final Logger log = LoggerFactory.getLogger(ResourceLimits.class);
+
+    private final int activeProcessorCount;
+    private final List<String> arguments;
+    private final int gcThreads;
+    private final long maxHeapSize;
+    private final long maxMetaspaceSize;
+
+    private ResourceLimits(Builder builder) {
+        this.activeProcessorCount = builder.activeProcessorCount;
+        this.gcThreads = builder.gcThreads;
+        this.maxHeapSize = builder.maxHeapSize;
+        this.maxMetaspaceSize = builder.maxMetaspaceSize;
+
+        List<String> arguments = new ArrayList<>();
+        if (maxHeapSize > 0)
+            arguments.add("-Xmx" + toKilobytes(maxHeapSize) + "k");
+        if (maxMetaspaceSize > 0)
+            arguments.add("-XX:MaxMetaspaceSize=" + toKilobytes(maxMetaspaceSize) + "k");
+        if (gcThreads > 0)
+            arguments.add("-XX:ParallelGCThreads=" + gcThreads);
+        if (activeProcessorCount > 0)
+            arguments.add("-XX:ActiveProcessorCount=" + activeProcessorCount);
+        this.arguments = unmodifiableList(arguments);
+    }
+
+    /**
+     * Returns limits which give each of the specified number of child JVMs an equal share of the memory and CPUs of the
+     * container or host. The memory which is split excludes what the parent JVM may use, i.e. its maximum heap size
+     * and its current memory use outside of the heap, and 10% headroom. Of its memory share, a child JVM gets 60% for
+     * the heap, 10% for metaspace, and the rest for native memory such as thread stacks and compiled code.
+     */
+    public static ResourceLimits automatic(int isolateCount) {
+        Path cgroup = getCgroup();
+        long memory = getCgroupMemoryLimit(cgroup).orElseGet(ResourceLimits::getPhysicalMemory);
+        long parentMemory = getParentMemory();
+        int processors = getCgroupProcessorLimit(cgroup).orElseGet(() -> Runtime.getRuntime().availableProcessors());
+        ResourceLimits limits = split(memory, parentMemory, processors, isolateCount);
+        log.info("Split {} MB, of which the parent JVM may use {} MB, and {} CPUs across {} isolates: {}",
+                memory / MEGABYTE, parentMemory / MEGABYTE, processors, isolateCount, limits.getArguments());
+        return limits;
+    }
+
+    static ResourceLimits split(long memory, long parentMemory, int processors, int isolateCount) {
+        requirePositive(isolateCount, "isolateCount");
+        long splitMemory = Math.max(0, memory - parentMemory - (long) (memory * HEADROOM_SHARE));
+        long memoryShare = splitMemory / isolateCount;
+        int processorShare = Math.max(1, processors / isolateCount);
+        return new Builder()
+                .withMaxHeapSize(Math.max(MIN_HEAP_SIZE, (long) (memoryShare * HEAP_SHARE)))
+                .withMaxMetaspaceSize(Math.max(MIN_METASPACE_SIZE, (long) (memoryShare * METASPACE_SHARE)))
+                .withGcThreads(processorShare)
+                .withActiveProcessorCount(processorShare)
+                .build();
+    }
+
+    /**
+     * Returns the command line arguments which apply these limits to a child JVM.
+     */
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    public OptionalInt getActiveProcessorCount() {
+        return activeProcessorCount > 0 ? OptionalInt.of(activeProcessorCount) : OptionalInt.empty();
+    }
+
+    public OptionalInt getGcThreads() {
+        return gcThreads > 0 ? OptionalInt.of(gcThreads) : OptionalInt.empty();
+    }
+
+    public OptionalLong getMaxHeapSize() {
+        return maxHeapSize > 0 ? OptionalLong.of(maxHeapSize) : OptionalLong.empty();
+    }
+
+    public OptionalLong getMaxMetaspaceSize() {
+        return maxMetaspaceSize > 0 ? OptionalLong.of(maxMetaspaceSize) : OptionalLong.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceLimits" + arguments;
+    }
+
+    /**
+     * Returns the cgroup v2 directory of this process, or {@code null} if it doesn't use cgroup v2.
+     */
+    private static Path getCgroup() {
+        try {
+            Path cgroupFile = Paths.get("/proc/self/cgroup");
+            if (!Files.isReadable(cgroupFile))
+                return null;
+            for (String line : Files.readAllLines(cgroupFile)) {
+                // The only entry of a cgroup v2 hierarchy has the format 0::<path>
+                if (line.startsWith("0::")) {
+                    Path cgroup = Paths.get(CGROUP_ROOT, line.substring(3));
+                    return Files.isDirectory(cgroup) ? cgroup : Paths.get(CGROUP_ROOT);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not determine cgroup", e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the lowest {@code memory.max} of the cgroup and its ancestors.
+     */
+    private static OptionalLong getCgroupMemoryLimit(Path cgroup) {
+        long limit = Long.MAX_VALUE;
+        for (Path dir = cgroup; dir != null && dir.startsWith(CGROUP_ROOT); dir = dir.getParent()) {
+            String value = readCgroupFile(dir.resolve("memory.max"));
+            if (value != null && !value.equals("max"))
+                limit = Math.min(limit, Long.parseLong(value));
+        }
+        return limit == Long.MAX_VALUE ? OptionalLong.empty() : OptionalLong.of(limit);
+    }
+
+    /**
+     * Returns the lowest CPU quota of the cgroup and its ancestors, as set via {@code cpu.max}, rounded up to whole
+     * CPUs.
+     */
+    private static OptionalInt getCgroupProcessorLimit(Path cgroup) {
+        int limit = Integer.MAX_VALUE;
+        for (Path dir = cgroup; dir != null && dir.startsWith(CGROUP_ROOT); dir = dir.getParent()) {
+            String value = readCgroupFile(dir.resolve("cpu.max"));
+            if (value != null) {
+                // Format: <quota> <period>, where quota may be "max"
+                String[] quotaAndPeriod = value.split(" ");
+                if (quotaAndPeriod.length == 2 && !quotaAndPeriod[0].equals("max")) {
+                    long quota = Long.parseLong(quotaAndPeriod[0]);
+                    long period = Long.parseLong(quotaAndPeriod[1]);
+                    limit = Math.min(limit, (int) Math.max(1, (quota + period - 1) / period));
+                }
+            }
+        }
+        return limit == Integer.MAX_VALUE ? OptionalInt.empty() : OptionalInt.of(limit);
+    }
+
+    private static String readCgroupFile(Path file) {
+        try {
+            return Files.isReadable(file) ? new String(Files.readAllBytes(file)).trim() : null;
+        } catch (IOException e) {
+            log.debug("Could not read {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the memory which this JVM may use: its maximum heap size plus the memory it uses outside of the heap,
+     * as told by its resident set size if available.
+     */
+    private static long getParentMemory() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        long usedHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+        long residentSetSize = getResidentSetSize()
+                .orElseGet(() -> usedHeap + memoryMXBean.getNonHeapMemoryUsage().getCommitted());
+        return Runtime.getRuntime().maxMemory() + Math.max(0, residentSetSize - usedHeap);
+    }
+
+    private static OptionalLong getResidentSetSize() {
+        try (Stream<String> lines = Files.lines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+            return lines.filter(l -> l.startsWith("VmRSS:"))
+                    .mapToLong(l -> Long.parseLong(l.replaceAll("[^0-9]", "")) * 1024)
+                    .findFirst();
+        } catch (IOException | RuntimeException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long getPhysicalMemory() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getTotalPhysicalMemorySize();
+    }
+
+    private static long toKilobytes(long bytes) {
+        return Math.max(1, bytes / 1024);
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1)
+            throw new IllegalArgumentException(name + " must be positive, but was " + value);
+        return value;
+    }
+
+    private static long requirePositive(long value, String name) {
+        if (value < 1)
+            throw new IllegalArgumentException(name + " must be positive, but was " + value);
+        return value;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sink which keeps the most recent bytes written to it, up to its capacity. Older bytes are dropped and counted.
+ */
+public class RingBufferSink implements OutputSink {
+
+    private final byte[] buffer;
+    private long droppedBytes;
+    private int size;
+    private int start;
+
+    public RingBufferSink(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.buffer = new byte[capacity];
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (length > buffer.length) {
+            droppedBytes += length - buffer.length;
+            bytes.position(bytes.limit() - buffer.length);
+            length = buffer.length;
+        }
+
+        int overflow = size + length - buffer.length;
+        if (overflow > 0) {
+            droppedBytes += overflow;
+            start = (start + overflow) % buffer.length;
+            size -= overflow;
+        }
+
+        int end = (start + size) % buffer.length;
+        int firstPart = Math.min(length, buffer.length - end);
+        bytes.get(buffer, end, firstPart);
+        bytes.get(buffer, 0, length - firstPart);
+        size += length;
+    }
+
+    /**
+     * Removes and returns the buffered bytes.
+     */
+    public synchronized byte[] drain() {
+        byte[] bytes = new byte[size];
+        int firstPart = Math.min(size, buffer.length - start);
+        System.arraycopy(buffer, start, bytes, 0, firstPart);
+        System.arraycopy(buffer, 0, bytes, firstPart, size - firstPart);
+        start = 0;
+        size = 0;
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes which were dropped because the buffer was full.
+     */
+    public synchronized long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
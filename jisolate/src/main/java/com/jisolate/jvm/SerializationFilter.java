@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import java.io.ObjectInputFilter;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which classes the parent deserializes from the values sent by a child JVM, so that a compromised or buggy
+ * child can't make the parent instantiate arbitrary serializable classes. It allows JDK value types, i.e. the classes
+ * of {@code java.lang}, {@code java.util}, {@code java.math} and {@code java.time} other than reflection, as well as
+ * throwables. The filter of a remote interface also allows the parameter and return types of its methods, their field
+ * types and their subtypes.
+ * <p>
+ * Further classes can be allowed via the {@value #PATTERN_PROPERTY} system property, whose patterns have the syntax of
+ * the {@code jdk.serialFilter} property, e.g. {@code com.example.**}. The depth of a serialized object graph is
+ * limited, as are the lengths of its arrays and its number of references, by the size of the serialized bytes.
+ */
+final class SerializationFilter {
+
+    static final String PATTERN_PROPERTY = "jisolate.serialFilter";
+    private static final int MAX_DEPTH = 64;
+    private static final String[] JDK_VALUE_PACKAGES = {"java.lang.", "java.util.", "java.math.", "java.time."};
+    private static final String[] JDK_REFLECTION_PACKAGES = {"java.lang.invoke.", "java.lang.reflect."};
+
+    private final Set<Class<?>> allowedTypes;
+    private final ClassLoader classLoader;
+    private final ObjectInputFilter patternFilter;
+
+    /**
+     * Creates a filter which allows JDK value types, throwables and the classes matched by the
+     * {@value #PATTERN_PROPERTY} system property.
+     */
+    SerializationFilter() {
+        this(Collections.emptySet(), null);
+    }
+
+    /**
+     * Creates a filter which additionally allows the types of the specified remote interface. Classes are resolved
+     * via the interface's class loader.
+     */
+    SerializationFilter(Class<?> remoteInterface) {
+        this(getRemoteTypes(remoteInterface), remoteInterface.getClassLoader());
+    }
+
+    private SerializationFilter(Set<Class<?>> allowedTypes, ClassLoader classLoader) {
+        this.allowedTypes = allowedTypes;
+        this.classLoader = classLoader;
+        String pattern = System.getProperty(PATTERN_PROPERTY);
+        this.patternFilter = pattern == null || pattern.isEmpty() ? null
+                : ObjectInputFilter.Config.createFilter(pattern);
+    }
+
+    /**
+     * Returns the class loader via which classes are resolved, or {@code null} for that of
+     * {@link java.io.ObjectInputStream}.
+     */
+    ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    ObjectInputFilter.Status check(ObjectInputFilter.FilterInfo info, int serializedLength) {
+        if (info.depth() > MAX_DEPTH || info.references() > serializedLength || info.arrayLength() > serializedLength)
+            return ObjectInputFilter.Status.REJECTED;
+
+        Class<?> serialClass = info.serialClass();
+        if (serialClass == null)
+            return ObjectInputFilter.Status.ALLOWED;
+        while (serialClass.isArray())
+            serialClass = serialClass.getComponentType();
+        if (serialClass.isPrimitive() || isAllowed(serialClass))
+            return ObjectInputFilter.Status.ALLOWED;
+        if (patternFilter != null && patternFilter.checkInput(info) == ObjectInputFilter.Status.ALLOWED)
+            return ObjectInputFilter.Status.ALLOWED;
+        return ObjectInputFilter.Status.REJECTED;
+    }
+
+    private boolean isAllowed(Class<?> serialClass) {
+        if (isJdkValueType(serialClass) || Throwable.class.isAssignableFrom(serialClass))
+            return true;
+        for (Class<?> allowedType : allowedTypes)
+            if (allowedType.isAssignableFrom(serialClass))
+                return true;
+        return false;
+    }
+
+    private static boolean isJdkValueType(Class<?> type) {
+        String name = type.getName();
+        for (String reflectionPackage : JDK_REFLECTION_PACKAGES)
+            if (name.startsWith(reflectionPackage))
+                return false;
+        for (String valuePackage : JDK_VALUE_PACKAGES)
+            if (name.startsWith(valuePackage))
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the non-JDK types which are declared by the methods of a remote interface or reachable from them via
+     * fields or type arguments.
+     */
+    private static Set<Class<?>> getRemoteTypes(Class<?> remoteInterface) {
+        Set<Class<?>> types = new HashSet<>();
+        for (Method method : JvmIsolateWorker.remoteMethods(remoteInterface)) {
+            addTypes(method.getGenericReturnType(), types);
+            for (Type parameterType : method.getGenericParameterTypes())
+                addTypes(parameterType, types);
+        }
+        return types;
+    }
+
+    private static void addTypes(Type type, Set<Class<?>> types) {
+        if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            while (clazz.isArray())
+                clazz = clazz.getComponentType();
+            if (clazz.isPrimitive() || clazz.getName().startsWith("java.") || !types.add(clazz))
+                return;
+            try {
+                addTypes(clazz.getGenericSuperclass(), types);
+                for (Field field : clazz.getDeclaredFields())
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers()))
+                        addTypes(field.getGenericType(), types);
+            } catch (LinkageError e) {
+                // The types of its fields are not available in this JVM, so they can't be deserialized anyway
+            }
+        } else if (type instanceof ParameterizedType) {
+            addTypes(((ParameterizedType) type).getRawType(), types);
+            for (Type typeArgument : ((ParameterizedType) type).getActualTypeArguments())
+                addTypes(typeArgument, types);
+        } else if (type instanceof GenericArrayType) {
+            addTypes(((GenericArrayType) type).getGenericComponentType(), types);
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds())
+                addTypes(bound, types);
+        } else if (type instanceof TypeVariable) {
+            for (Type bound : ((TypeVariable<?>) type).getBounds())
+                addTypes(bound, types);
+        }
+    }
+}
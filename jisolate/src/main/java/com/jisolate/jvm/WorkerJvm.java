@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.jvm;
+
+import com.jisolate.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jisolate.jvm.JvmIsolateWorker.FAILED;
+import static com.jisolate.jvm.JvmIsolateWorker.INVOKE_ISOLATABLE;
+import static com.jisolate.jvm.JvmIsolateWorker.INVOKE_MAIN;
+import static com.jisolate.jvm.JvmIsolateWorker.INITIALIZE_PROPERTY;
+import static com.jisolate.jvm.JvmIsolateWorker.PORT_PROPERTY;
+import static com.jisolate.jvm.JvmIsolateWorker.SUCCEEDED;
+import static com.jisolate.jvm.JvmIsolateWorker.TOKEN_PROPERTY;
+import static java.lang.String.format;
+import static java.util.Collections.emptyList;
+
+/**
+ * Parent-side handle of a child JVM which runs a {@link JvmIsolateWorker}.
+ */
+class WorkerJvm implements Closeable {
+
+    private static final int CONNECT_POLL_MILLIS = 100;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final AtomicInteger callIds = new AtomicInteger();
+    private final Channel channel;
+    private final long createdNanos = System.nanoTime();
+    private final Process process;
+    private final SerializationFilter serializationFilter = new SerializationFilter();
+    private volatile boolean broken;
+    private int uses;
+
+    private WorkerJvm(Process process, Socket socket) throws IOException {
+        this.process = process;
+        this.channel = new Channel(socket);
+    }
+
+    /**
+     * Spawns a child JVM and blocks until it has connected back via the {@link ChannelAcceptor}, i.e. until it is
+     * ready to accept invocations.
+     */
+    static WorkerJvm spawn(JvmIsolater isolater, Duration timeout) throws IOException {
+        ChannelAcceptor channelAcceptor = ChannelAcceptor.getInstance();
+        CompletableFuture<Socket> connection = new CompletableFuture<>();
+        String token = channelAcceptor.register(socket -> {
+            if (!connection.complete(socket))
+                closeQuietly(socket);
+        });
+
+        Process process = null;
+        try {
+            List<String> systemProperties = new ArrayList<>();
+            systemProperties.add(format("-D%s=%d", PORT_PROPERTY, channelAcceptor.getPort()));
+            systemProperties.add(format("-D%s=%s", TOKEN_PROPERTY, token));
+            if (isolater.getMainClassName() != null)
+                systemProperties.add(format("-D%s=%s", INITIALIZE_PROPERTY, isolater.getMainClassName()));
+
+            long startNanos = System.nanoTime();
+            process = isolater.start(JvmIsolateWorker.class.getName(), emptyList(), systemProperties);
+            WorkerJvm worker = new WorkerJvm(process, awaitConnection(connection, process, timeout));
+            Metrics.timer(Metrics.JVM_SPAWN).recordSince(startNanos);
+            return worker;
+        } catch (IOException | RuntimeException e) {
+            channelAcceptor.unregister(token);
+            // The child JVM may have connected whilst this spawn gave up
+            if (!connection.cancel(false))
+                closeQuietly(connection.join());
+            if (process != null)
+                process.destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a random token which a child JVM has to send when it connects back, so that other processes can't
+     * connect in its stead.
+     */
+    static String newToken() {
+        return new BigInteger(130, random).toString(32);
+    }
+
+    private static Socket awaitConnection(CompletableFuture<Socket> connection, Process process, Duration timeout)
+            throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            // Checked before waiting, since a child JVM may connect and terminate before its handshake completes
+            boolean alive = process.isAlive();
+            try {
+                return connection.get(CONNECT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!alive)
+                    throw new IOException("Child JVM terminated with exit code " + process.exitValue()
+                            + " before it was ready");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted whilst waiting for child JVM to connect");
+            } catch (ExecutionException e) {
+                throw new IOException("Child JVM could not connect", e.getCause());
+            }
+        }
+        throw new IOException(format("Child JVM was not ready within %dms", timeout.toMillis()));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // The connection is discarded, regardless
+        }
+    }
+
+    long getAgeNanos() {
+        return System.nanoTime() - createdNanos;
+    }
+
+    int getUses() {
+        return uses;
+    }
+
+    boolean isUsable() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Reads the failure sent by a worker, preferably as the original exception or otherwise as its description.
+     */
+    static Throwable readFailure(DataInputStream payload, SerializationFilter filter) throws IOException {
+        String description = payload.readUTF();
+        try {
+            Object failure = Codec.read(payload, filter);
+            if (failure instanceof Throwable)
+                return (Throwable) failure;
+        } catch (IOException e) {
+            // The exception's class is not available in this JVM or not allowed by the filter
+        }
+        return new RuntimeException("Failure in isolated JVM: " + description);
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    Process getProcess() {
+        return process;
+    }
+
+    int nextCallId() {
+        return callIds.incrementAndGet();
+    }
+
+    /**
+     * Invokes the main method of the specified class and blocks until it has returned. Must not be called
+     * concurrently.
+     */
+    void invokeMain(String mainClassName, Collection<String> mainClassArguments) throws IOException {
+        uses++;
+        runMain(mainClassName, mainClassArguments);
+    }
+
+    /**
+     * Like {@link #invokeMain(String, Collection)}, but doesn't count as a use.
+     */
+    void warmUp(String mainClassName, Collection<String> mainClassArguments) throws IOException {
+        runMain(mainClassName, mainClassArguments);
+    }
+
+    private void runMain(String mainClassName, Collection<String> mainClassArguments) throws IOException {
+        try {
+            channel.send(nextCallId(), INVOKE_MAIN, Channel.payload(out -> {
+                out.writeUTF(mainClassName);
+                out.writeInt(mainClassArguments == null ? 0 : mainClassArguments.size());
+                if (mainClassArguments != null)
+                    for (String mainClassArgument : mainClassArguments)
+                        out.writeUTF(mainClassArgument);
+            }));
+
+            Channel.Frame response = channel.receive();
+            if (response.getType() == FAILED)
+                throw new RuntimeException(format("Invocation of %s#main failed in isolated JVM: %s", mainClassName,
+                        response.getPayload().readUTF()));
+            else if (response.getType() != SUCCEEDED)
+                throw new IOException("Unexpected frame type " + response.getType());
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Invokes the entry point of an isolatable class and blocks until it has returned. Must not be called
+     * concurrently.
+     *
+     * @return the result of its call method or {@code null} if its main method was invoked
+     */
+    Object invokeIsolatable(String isolatableClassName, Object[] arguments) throws IOException {
+        uses++;
+        try {
+            channel.send(nextCallId(), INVOKE_ISOLATABLE, Channel.payload(out -> {
+                out.writeUTF(isolatableClassName);
+                out.writeInt(arguments == null ? 0 : arguments.length);
+                if (arguments != null)
+                    for (Object argument : arguments)
+                        Codec.write(out, argument);
+            }));
+
+            Channel.Frame response = channel.receive();
+            if (response.getType() == FAILED)
+                throw new RuntimeException(format("Invocation of %s failed in isolated JVM", isolatableClassName),
+                        readFailure(response.getPayload(), serializationFilter));
+            else if (response.getType() != SUCCEEDED)
+                throw new IOException("Unexpected frame type " + response.getType());
+            return Codec.read(response.getPayload(), serializationFilter);
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The child JVM is destroyed below, regardless
+        }
+        process.destroy();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerJvm{process=" + process + ", uses=" + uses + "}";
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+/**
+ * Value which is incremented and decremented, e.g. a number of live isolates or a total number of bytes.
+ */
+public interface Counter {
+
+    void add(long delta);
+
+    default void increment() {
+        add(1);
+    }
+
+    default void decrement() {
+        add(-1);
+    }
+}
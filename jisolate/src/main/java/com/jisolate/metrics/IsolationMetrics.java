@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+/**
+ * Service provider interface for the metrics of isolations. The names of the metrics are defined by {@link Metrics}.
+ * <p>
+ * Instruments are looked up for each recording, so implementations should return them quickly, typically from a
+ * map. All methods have to be thread-safe.
+ */
+public interface IsolationMetrics {
+
+    Counter counter(String name);
+
+    Histogram histogram(String name);
+
+    Timer timer(String name);
+}
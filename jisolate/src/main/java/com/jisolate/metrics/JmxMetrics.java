@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics which are exposed as MBeans named {@code com.jisolate:type=<Counter|Histogram|Timer>,name=<name>}. Timers
+ * report nanoseconds. Percentiles are accurate to within 12.5%.
+ */
+public class JmxMetrics implements IsolationMetrics, Closeable {
+
+    public interface CounterMBean {
+        long getValue();
+    }
+
+    public interface HistogramMBean {
+        long getCount();
+
+        double getMean();
+
+        long getMin();
+
+        long getMax();
+
+        long get50thPercentile();
+
+        long get90thPercentile();
+
+        long get99thPercentile();
+    }
+
+    public interface TimerMBean extends HistogramMBean {
+        long getTotalTime();
+    }
+
+    private static class JmxCounter implements Counter, CounterMBean {
+        private final LongAdder value = new LongAdder();
+
+        @Override
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        @Override
+        public long getValue() {
+            return value.sum();
+        }
+    }
+
+    private static class JmxHistogram extends ConcurrentHistogram implements TimerMBean {
+        @Override
+        public long getCount() {
+            return super.getCount();
+        }
+
+        @Override
+        public double getMean() {
+            return super.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return super.getMin();
+        }
+
+        @Override
+        public long getMax() {
+            return super.getMax();
+        }
+
+        @Override
+        public long get50thPercentile() {
+            return getPercentile(0.5);
+        }
+
+        @Override
+        public long get90thPercentile() {
+            return getPercentile(0.9);
+        }
+
+        @Override
+        public long get99thPercentile() {
+            return getPercentile(0.99);
+        }
+
+        @Override
+        public long getTotalTime() {
+            return getSum();
+        }
+    }
+
+    static final String DOMAIN = "com.jisolate";
+    private static final Logger log = LoggerFactory.getLogger(JmxMetrics.class);
+
+    private final ConcurrentMap<String, JmxCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, JmxHistogram> histograms = new ConcurrentHashMap<>();
+    private final MBeanServer mBeanServer;
+    private final ConcurrentMap<String, JmxHistogram> timers = new ConcurrentHashMap<>();
+
+    public JmxMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetrics(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    @Override
+    public Counter counter(String name) {
+        JmxCounter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name,
+                n -> register("Counter", n, new JmxCounter(), CounterMBean.class));
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        JmxHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name,
+                n -> register("Histogram", n, new JmxHistogram(), HistogramMBean.class));
+    }
+
+    @Override
+    public Timer timer(String name) {
+        JmxHistogram timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name,
+                n -> register("Timer", n, new JmxHistogram(), TimerMBean.class));
+    }
+
+    /**
+     * Unregisters all MBeans of these metrics.
+     */
+    @Override
+    public void close() {
+        counters.keySet().forEach(n -> unregister("Counter", n));
+        histograms.keySet().forEach(n -> unregister("Histogram", n));
+        timers.keySet().forEach(n -> unregister("Timer", n));
+    }
+
+    static ObjectName getObjectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    private <T, M> T register(String type, String name, T metric, Class<M> mBeanInterface) {
+        try {
+            mBeanServer.registerMBean(new StandardMBean(mBeanInterface.cast(metric), mBeanInterface),
+                    getObjectName(type, name));
+        } catch (InstanceAlreadyExistsException e) {
+            log.warn("MBean for {} {} is already registered by other metrics, so it isn't exposed", type, name);
+        } catch (JMException e) {
+            log.warn("Could not register MBean for {} {}", type, name, e);
+        }
+        return metric;
+    }
+
+    private void unregister(String type, String name) {
+        try {
+            mBeanServer.unregisterMBean(getObjectName(type, name));
+        } catch (JMException e) {
+            log.debug("Could not unregister MBean for {} {}", type, name, e);
+        }
+    }
+}
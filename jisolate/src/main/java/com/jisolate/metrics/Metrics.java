@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Entry point to the metrics of isolations and the names of these metrics.
+ * <p>
+ * The metrics implementation is chosen by the {@code jisolate.metrics} system property, which is either {@code jmx}
+ * for {@link JmxMetrics} or the name of an {@link IsolationMetrics} class with a no-arg constructor. Otherwise, the
+ * first implementation registered via {@link ServiceLoader} is used, and {@link NoOpMetrics} if there is none. It
+ * can also be set programmatically via {@link #set(IsolationMetrics)}.
+ */
+public final class Metrics {
+
+    /**
+     * Timer for the creation of isolated class loaders.
+     */
+    public static final String CLASS_LOADER_CREATION = "jisolate.classloader.creation";
+
+    /**
+     * Timer for each class loaded by an isolated class loader.
+     */
+    public static final String CLASS_LOAD = "jisolate.classloader.classLoad";
+
+    /**
+     * Histogram of the number of classes loaded by each isolated class loader, recorded at its teardown.
+     */
+    public static final String CLASSES_PER_CLASS_LOADER = "jisolate.classloader.classesPerClassLoader";
+
+    /**
+     * Histogram of the total nanoseconds each isolated class loader spent loading classes, recorded at its teardown.
+     */
+    public static final String CLASS_LOAD_TIME_PER_CLASS_LOADER = "jisolate.classloader.classLoadTimePerClassLoader";
+
+    /**
+     * Timer for each invocation of isolated code by a class loader isolation or session.
+     */
+    public static final String INVOCATION = "jisolate.classloader.invocation";
+
+    /**
+     * Counter of the class loader isolations and sessions which are currently open.
+     */
+    public static final String LIVE_CLASS_LOADER_ISOLATES = "jisolate.classloader.live";
+
+    /**
+     * Timer from spawning a child JVM until it has connected back to its parent, i.e. until it is ready.
+     */
+    public static final String JVM_SPAWN = "jisolate.jvm.spawn";
+
+    /**
+     * Counter of the bytes read from the stdout and stderr of child JVMs.
+     */
+    public static final String JVM_OUTPUT_BYTES = "jisolate.jvm.outputBytes";
+
+    /**
+     * Counter of the child JVMs which are currently alive.
+     */
+    public static final String LIVE_JVM_ISOLATES = "jisolate.jvm.live";
+
+    static final String METRICS_PROPERTY = "jisolate.metrics";
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+    private static volatile IsolationMetrics metrics;
+
+    private Metrics() {
+    }
+
+    public static IsolationMetrics get() {
+        IsolationMetrics metrics = Metrics.metrics;
+        if (metrics == null) {
+            synchronized (Metrics.class) {
+                metrics = Metrics.metrics;
+                if (metrics == null)
+                    Metrics.metrics = metrics = load();
+            }
+        }
+        return metrics;
+    }
+
+    public static void set(IsolationMetrics metrics) {
+        Metrics.metrics = requireNonNull(metrics);
+    }
+
+    public static Counter counter(String name) {
+        return get().counter(name);
+    }
+
+    public static Histogram histogram(String name) {
+        return get().histogram(name);
+    }
+
+    public static Timer timer(String name) {
+        return get().timer(name);
+    }
+
+    private static IsolationMetrics load() {
+        String metricsName = System.getProperty(METRICS_PROPERTY);
+        try {
+            if ("jmx".equals(metricsName))
+                return new JmxMetrics();
+            if (metricsName != null)
+                return (IsolationMetrics) Class.forName(metricsName).getDeclaredConstructor().newInstance();
+            Iterator<IsolationMetrics> providers = ServiceLoader.load(IsolationMetrics.class).iterator();
+            if (providers.hasNext())
+                return providers.next();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            log.warn("Could not create metrics {}, so no metrics are recorded", metricsName, e);
+        }
+        return NoOpMetrics.INSTANCE;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+/**
+ * Metrics which discard all recordings. This is the default if no other metrics are configured.
+ */
+public final class NoOpMetrics implements IsolationMetrics {
+
+    public static final NoOpMetrics INSTANCE = new NoOpMetrics();
+
+    private static final Counter COUNTER = delta -> {
+    };
+    private static final Histogram HISTOGRAM = value -> {
+    };
+    private static final Timer TIMER = durationNanos -> {
+    };
+
+    private NoOpMetrics() {
+    }
+
+    @Override
+    public Counter counter(String name) {
+        return COUNTER;
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return HISTOGRAM;
+    }
+
+    @Override
+    public Timer timer(String name) {
+        return TIMER;
+    }
+}
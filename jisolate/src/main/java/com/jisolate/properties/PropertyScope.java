@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.properties;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * System properties which have been set or removed within an isolation. All threads which run on behalf of the
+ * isolation share its scope, including threads spawned by them.
+ * <p>
+ * The overrides are kept in an immutable map which is replaced whenever a property is set or removed, so that lookups
+ * neither lock nor allocate.
+ */
+public final class PropertyScope {
+
+    /**
+     * String property names of the merged view of some properties and the overrides, which stay valid as long as the
+     * overrides haven't been replaced.
+     */
+    static final class StringPropertyNames {
+        private final Set<String> names;
+        private final Map<Object, Object> overrides;
+        private final Properties properties;
+
+        StringPropertyNames(Properties properties, Map<Object, Object> overrides, Set<String> names) {
+            this.properties = properties;
+            this.overrides = overrides;
+            this.names = names;
+        }
+
+        boolean isValid(Properties properties, Map<Object, Object> overrides) {
+            return this.properties == properties && this.overrides == overrides;
+        }
+
+        Set<String> getNames() {
+            return names;
+        }
+    }
+
+    /**
+     * Marks a property which has been removed within the scope.
+     */
+    static final Object REMOVED = new Object();
+
+    private final boolean inheritable;
+    private volatile Map<Object, Object> overrides = Collections.emptyMap();
+    private volatile StringPropertyNames stringPropertyNames;
+
+    /**
+     * Creates a scope which is inherited by the threads spawned by the threads using it.
+     */
+    public PropertyScope() {
+        this(true);
+    }
+
+    PropertyScope(boolean inheritable) {
+        this.inheritable = inheritable;
+    }
+
+    /**
+     * Creates an inheritable scope which starts out with the specified overrides.
+     */
+    PropertyScope(Map<Object, Object> overrides) {
+        this(true);
+        this.overrides = overrides;
+    }
+
+    boolean isInheritable() {
+        return inheritable;
+    }
+
+    /**
+     * Returns the overrides, where {@link #REMOVED} is the value of removed properties.
+     */
+    Map<Object, Object> getOverrides() {
+        return overrides;
+    }
+
+    StringPropertyNames getStringPropertyNames() {
+        return stringPropertyNames;
+    }
+
+    void setStringPropertyNames(StringPropertyNames stringPropertyNames) {
+        this.stringPropertyNames = stringPropertyNames;
+    }
+
+    /**
+     * Returns the previous override.
+     */
+    synchronized Object override(Object key, Object value) {
+        Map<Object, Object> updatedOverrides = new HashMap<>(overrides);
+        Object previousValue = updatedOverrides.put(key, value);
+        overrides = Collections.unmodifiableMap(updatedOverrides);
+        return previousValue;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * System properties which can be set and removed without affecting other isolations. Changes are recorded in the
+ * {@link PropertyScope} of the current thread and overlay the global system properties; all lookups, including
+ * iteration and {@link #stringPropertyNames()}, see the merged view. All changes, including bulk changes such as
+ * {@link #putAll(Map)} and {@link #clear()}, are recorded in the scope; the global system properties are never
+ * modified and the collection views are read-only.
+ * <p>
+ * Isolations use a scope which is inherited by the threads they spawn. Threads without a scope get their own one once
+ * they change a property. Until any thread has a scope, lookups don't even access the thread-local scope.
+ */
+public class ThreadLocalProperties extends Properties {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadLocalProperties.class);
+    private static final InheritableThreadLocal<PropertyScope> scopes = new InheritableThreadLocal<PropertyScope>() {
+        @Override
+        protected PropertyScope childValue(PropertyScope parentScope) {
+            return parentScope != null && parentScope.isInheritable() ? parentScope : null;
+        }
+    };
+    private static volatile boolean scopesInUse;
+
+    public static synchronized void activate() {
+        Properties props = System.getProperties();
+        if (!(props instanceof ThreadLocalProperties)) {
+            System.setProperties(new ThreadLocalProperties(props));
+            log.info("Activated thread-local system properties");
+        }
+    }
+
+    /**
+     * Returns the scope of the current thread, or {@code null} if it has none.
+     */
+    public static PropertyScope getScope() {
+        return scopesInUse ? scopes.get() : null;
+    }
+
+    /**
+     * Sets the scope of the current thread. Threads which it spawns afterwards inherit the scope.
+     *
+     * @param scope scope, or {@code null} to only see the global system properties
+     */
+    public static void setScope(PropertyScope scope) {
+        if (scope == null) {
+            scopes.remove();
+        } else {
+            scopes.set(scope);
+            scopesInUse = true;
+        }
+    }
+
+    /**
+     * Creates the scope of a new isolation. It starts out with the changes made within the scope of the current thread,
+     * if any, so that the isolation sees the same system properties as the thread which starts it, regardless of
+     * whether thread-local system properties were already active when that thread made its changes.
+     */
+    public static PropertyScope newIsolationScope() {
+        PropertyScope scope = getScope();
+        return scope == null ? new PropertyScope() : new PropertyScope(scope.getOverrides());
+    }
+
+    /**
+     * Discards the scope of the current thread. Threads which are reused for several isolations must call this
+     * between isolations.
+     */
+    public static void clearLocalProperties() {
+        setScope(null);
+    }
+
+    ThreadLocalProperties(Properties properties) {
+        for (String name : properties.stringPropertyNames())
+            super.put(name, properties.getProperty(name));
+    }
+
+    @Override
+    public String getProperty(String key) {
+        PropertyScope scope = getScope();
+        if (scope != null) {
+            Object value = scope.getOverrides().get(key);
+            if (value != null)
+                return value instanceof String ? (String) value : null;
+        }
+        return super.getProperty(key);
+    }
+
+    @Override
+    public Object setProperty(String key, String value) {
+        return put(key, value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        PropertyScope scope = getScope();
+        if (scope != null) {
+            Object value = scope.getOverrides().get(key);
+            if (value != null)
+                return value == PropertyScope.REMOVED ? null : value;
+        }
+        return super.get(key);
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Object previousValue = get(key);
+        getOrCreateScope().override(key, value);
+        return previousValue;
+    }
+
+    @Override
+    public Object putIfAbsent(Object key, Object value) {
+        Object previousValue = get(key);
+        return previousValue == null ? put(key, value) : previousValue;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object previousValue = get(key);
+        if (previousValue != null)
+            getOrCreateScope().override(key, PropertyScope.REMOVED);
+        return previousValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Object currentValue = get(key);
+        if (currentValue == null || !currentValue.equals(value))
+            return false;
+        remove(key);
+        return true;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> map) {
+        for (Map.Entry<?, ?> entry : map.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public void clear() {
+        for (Object key : new ArrayList<>(keySet()))
+            remove(key);
+    }
+
+    @Override
+    public Object replace(Object key, Object value) {
+        return get(key) == null ? null : put(key, value);
+    }
+
+    @Override
+    public boolean replace(Object key, Object oldValue, Object newValue) {
+        Object currentValue = get(key);
+        if (currentValue == null || !currentValue.equals(oldValue))
+            return false;
+        put(key, newValue);
+        return true;
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+        for (Map.Entry<Object, Object> entry : snapshot().entrySet())
+            put(entry.getKey(), function.apply(entry.getKey(), entry.getValue()));
+    }
+
+    @Override
+    public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+        Object value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            if (value != null)
+                put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        Object value = get(key);
+        return value == null ? null : update(key, remappingFunction.apply(key, value));
+    }
+
+    @Override
+    public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        return update(key, remappingFunction.apply(key, get(key)));
+    }
+
+    @Override
+    public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        Objects.requireNonNull(value);
+        Object currentValue = get(key);
+        return update(key, currentValue == null ? value : remappingFunction.apply(currentValue, value));
+    }
+
+    /**
+     * Sets the property, or removes it if the new value is {@code null}, and returns the new value.
+     */
+    private Object update(Object key, Object newValue) {
+        if (newValue == null)
+            remove(key);
+        else
+            put(key, newValue);
+        return newValue;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return containsValue(value);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return values().contains(Objects.requireNonNull(value));
+    }
+
+    @Override
+    public int size() {
+        PropertyScope scope = getScope();
+        return scope == null ? super.size() : size(scope.getOverrides());
+    }
+
+    private int size(Map<Object, Object> overrides) {
+        int size = super.size();
+        for (Map.Entry<Object, Object> override : overrides.entrySet()) {
+            boolean global = super.containsKey(override.getKey());
+            if (override.getValue() == PropertyScope.REMOVED) {
+                if (global)
+                    size--;
+            } else if (!global) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        PropertyScope scope = getScope();
+        return scope == null ? Collections.unmodifiableSet(super.entrySet())
+                : new MergedSet<>(new MergedView<>(scope.getOverrides(), e -> e));
+    }
+
+    @Override
+    public Set<Object> keySet() {
+        PropertyScope scope = getScope();
+        return scope == null ? Collections.unmodifiableSet(super.keySet())
+                : new MergedSet<>(new MergedView<>(scope.getOverrides(), Map.Entry::getKey));
+    }
+
+    @Override
+    public Collection<Object> values() {
+        PropertyScope scope = getScope();
+        return scope == null ? Collections.unmodifiableCollection(super.values())
+                : new MergedView<>(scope.getOverrides(), Map.Entry::getValue);
+    }
+
+    @Override
+    public Enumeration<Object> keys() {
+        return Collections.enumeration(keySet());
+    }
+
+    @Override
+    public Enumeration<Object> elements() {
+        return Collections.enumeration(values());
+    }
+
+    @Override
+    public Enumeration<?> propertyNames() {
+        return Collections.enumeration(stringPropertyNames());
+    }
+
+    /**
+     * Returns the names of the string properties. Within a scope, they are cached until the scope's overrides change,
+     * since the global properties never do.
+     */
+    @Override
+    public Set<String> stringPropertyNames() {
+        PropertyScope scope = getScope();
+        if (scope == null)
+            return super.stringPropertyNames();
+
+        Map<Object, Object> overrides = scope.getOverrides();
+        PropertyScope.StringPropertyNames cachedNames = scope.getStringPropertyNames();
+        if (cachedNames != null && cachedNames.isValid(this, overrides))
+            return cachedNames.getNames();
+
+        Set<String> names = new HashSet<>();
+        for (Map.Entry<Object, Object> entry : new MergedView<>(overrides, e -> e))
+            if (entry.getKey() instanceof String && entry.getValue() instanceof String)
+                names.add((String) entry.getKey());
+        Set<String> unmodifiableNames = Collections.unmodifiableSet(names);
+        scope.setStringPropertyNames(new PropertyScope.StringPropertyNames(this, overrides, unmodifiableNames));
+        return unmodifiableNames;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Object, ? super Object> action) {
+        for (Map.Entry<Object, Object> entry : entrySet())
+            action.accept(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Returns a copy of the merged view which isn't backed by the global system properties.
+     */
+    @Override
+    public Object clone() {
+        Properties copy = new Properties();
+        copy.putAll(snapshot());
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof Map && snapshot().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return snapshot().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private Map<Object, Object> snapshot() {
+        Map<Object, Object> snapshot = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : entrySet())
+            snapshot.put(entry.getKey(), entry.getValue());
+        return snapshot;
+    }
+
+    private static PropertyScope getOrCreateScope() {
+        PropertyScope scope = getScope();
+        if (scope == null) {
+            // Threads outside of an isolation keep their changes to themselves
+            scope = new PropertyScope(false);
+            setScope(scope);
+        }
+        return scope;
+    }
+
+    /**
+     * Read-only view of the overrides of a scope followed by the global properties which they don't override. Unlike
+     * its keys and entries, its values may contain duplicates, so only the former are viewed as a {@link MergedSet}.
+     */
+    private class MergedView<T> extends AbstractCollection<T> {
+        private final Map<Object, Object> overrides;
+        private final Function<Map.Entry<Object, Object>, T> mapper;
+
+        MergedView(Map<Object, Object> overrides, Function<Map.Entry<Object, Object>, T> mapper) {
+            this.overrides = overrides;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<Map.Entry<Object, Object>> overrideIterator = overrides.entrySet().iterator();
+            Iterator<Map.Entry<Object, Object>> globalIterator = ThreadLocalProperties.super.entrySet().iterator();
+            return new Iterator<T>() {
+                private Map.Entry<Object, Object> next = advance();
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (next == null)
+                        throw new NoSuchElementException();
+                    Map.Entry<Object, Object> entry = next;
+                    next = advance();
+                    return mapper.apply(entry);
+                }
+
+                private Map.Entry<Object, Object> advance() {
+                    while (overrideIterator.hasNext()) {
+                        Map.Entry<Object, Object> entry = overrideIterator.next();
+                        if (entry.getValue() != PropertyScope.REMOVED)
+                            return entry;
+                    }
+                    while (globalIterator.hasNext()) {
+                        Map.Entry<Object, Object> entry = globalIterator.next();
+                        if (!overrides.containsKey(entry.getKey()))
+                            return new AbstractMap.SimpleImmutableEntry<>(entry);
+                    }
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ThreadLocalProperties.this.size(overrides);
+        }
+    }
+
+    /**
+     * Merged view of unique elements, i.e. keys or entries.
+     */
+    private static class MergedSet<T> extends AbstractSet<T> {
+        private final MergedView<T> view;
+
+        MergedSet(MergedView<T> view) {
+            this.view = view;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return view.iterator();
+        }
+
+        @Override
+        public int size() {
+            return view.size();
+        }
+    }
+}
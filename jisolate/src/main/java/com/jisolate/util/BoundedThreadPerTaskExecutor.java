@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor which starts a new thread per task, of which at most {@code parallelism} run at the same time. The others
+ * wait for a permit rather than in a queue, which is cheap for virtual threads. Unlike a thread pool, it never reuses
+ * a virtual thread.
+ * <p>
+ * A task which is interrupted whilst waiting for its permit, e.g. by {@link #shutdownNow()}, isn't dropped, since
+ * nobody would complete the future which it may belong to. It still runs once it gets its permit, but with its
+ * interrupt status set.
+ */
+final class BoundedThreadPerTaskExecutor extends AbstractExecutorService {
+
+    private final ExecutorService threadPerTaskExecutor;
+    private final Semaphore permits;
+
+    BoundedThreadPerTaskExecutor(ExecutorService threadPerTaskExecutor, int parallelism) {
+        this.threadPerTaskExecutor = threadPerTaskExecutor;
+        this.permits = new Semaphore(parallelism);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        threadPerTaskExecutor.execute(() -> {
+            boolean interrupted = false;
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                permits.acquireUninterruptibly();
+            }
+            try {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        threadPerTaskExecutor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threadPerTaskExecutor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threadPerTaskExecutor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threadPerTaskExecutor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threadPerTaskExecutor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors which run isolated code. If the JVM supports virtual threads, each task runs on a new virtual
+ * thread. Otherwise, tasks run on a pool of daemon threads.
+ */
+public final class IsolationExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(IsolationExecutors.class);
+    private static final String PARALLELISM_PROPERTY = "jisolate.parallelism";
+
+    private IsolationExecutors() {
+    }
+
+    /**
+     * Returns the number of threads used by default executors. It can be set via the {@code jisolate.parallelism}
+     * system property and defaults to the number of available processors.
+     */
+    public static int getDefaultParallelism() {
+        return Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an executor which runs at most {@code parallelism} tasks at the same time and never rejects a task.
+     * With virtual threads, each task gets its own virtual thread which waits for a permit to run. Otherwise, tasks
+     * wait in the queue of a thread pool whose idle threads time out, so that an unused executor doesn't keep any
+     * threads alive.
+     */
+    public static ExecutorService newBoundedExecutor(String threadNamePrefix, int parallelism) {
+        ThreadFactory virtualThreadFactory = newVirtualThreadFactory(threadNamePrefix);
+        if (virtualThreadFactory != null) {
+            ExecutorService threadPerTaskExecutor = newThreadPerTaskExecutor(virtualThreadFactory);
+            if (threadPerTaskExecutor != null)
+                return new BoundedThreadPerTaskExecutor(threadPerTaskExecutor, parallelism);
+        }
+        return newBoundedPlatformExecutor(threadNamePrefix, parallelism);
+    }
+
+    /**
+     * Like {@link #newBoundedExecutor(String, int)}, but always uses platform threads, e.g. so that the CPU time of
+     * its tasks can be measured.
+     */
+    public static ExecutorService newBoundedPlatformExecutor(String threadNamePrefix, int parallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), newPlatformThreadFactory(threadNamePrefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a factory for threads named {@code <threadNamePrefix>1}, {@code <threadNamePrefix>2} etc. Their context
+     * class loader is Jisolate's class loader rather than the one of the thread which happens to create them.
+     */
+    public static ThreadFactory newThreadFactory(String threadNamePrefix) {
+        ThreadFactory virtualThreadFactory = newVirtualThreadFactory(threadNamePrefix);
+        return virtualThreadFactory != null ? virtualThreadFactory : newPlatformThreadFactory(threadNamePrefix);
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(String threadNamePrefix) {
+        ClassLoader contextClassLoader = IsolationExecutors.class.getClassLoader();
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns a factory for virtual threads whose context class loader is Jisolate's class loader, or {@code null}
+     * if the JVM doesn't support virtual threads.
+     */
+    private static ThreadFactory newVirtualThreadFactory(String threadNamePrefix) {
+        ThreadFactory virtualThreadFactory;
+        try {
+            // Reflection is used since virtual threads are only available on Java 21 and later
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Virtual threads are not available", e);
+            return null;
+        }
+        ClassLoader contextClassLoader = IsolationExecutors.class.getClassLoader();
+        return r -> {
+            Thread thread = virtualThreadFactory.newThread(r);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        };
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Thread-per-task executors are not available", e);
+            return null;
+        }
+    }
+}
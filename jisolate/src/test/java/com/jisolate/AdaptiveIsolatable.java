@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate;
+
+/**
+ * Isolatable class whose behaviour depends on its first argument, and which returns the simple name of its class
+ * loader's class.
+ */
+public class AdaptiveIsolatable {
+
+    public Object call(Object... args) {
+        String loaderName = getClass().getClassLoader().getClass().getSimpleName();
+        switch ((String) args[0]) {
+            case "native":
+                // Mimics a native library which can only be loaded once per JVM
+                if (loaderName.contains("ChildFirst"))
+                    throw new UnsatisfiedLinkError("Native library already loaded in another class loader");
+                break;
+            case "burn":
+                long end = System.nanoTime() + 20_000_000;
+                while (System.nanoTime() < end)
+                    Thread.onSpinWait();
+                break;
+            case "invalid":
+                throw new IllegalArgumentException("Invalid argument");
+            default:
+                break;
+        }
+        return loaderName;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate;
+
+import com.jisolate.AdaptiveIsolater.Route;
+import com.jisolate.AdaptiveIsolater.Statistics;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveIsolaterTest {
+
+    @Test
+    public void lightweightInvocationsStayInClassLoader() {
+        AdaptiveIsolater isolater = Jisolate.adaptiveIsolation()
+                .withIsolatableClass(AdaptiveIsolatable.class)
+                .withCpuTimeBudget(Duration.ofSeconds(1))
+                .build();
+
+        for (int i = 0; i < 3; i++)
+            assertThat(isolater.invoke("echo").join()).isEqualTo("ChildFirstUrlClassLoader");
+
+        Statistics statistics = isolater.getStatistics();
+        assertThat(statistics.getRoute()).isEqualTo(Route.CLASS_LOADER);
+        assertThat(statistics.getClassLoaderInvocations()).isEqualTo(3);
+        assertThat(statistics.getJvmInvocations()).isEqualTo(0);
+        assertThat(statistics.getEscalationReason()).isNull();
+    }
+
+    @Test
+    public void linkageErrorEscalatesToJvm() {
+        AdaptiveIsolater isolater = Jisolate.adaptiveIsolation()
+                .withIsolatableClass(AdaptiveIsolatable.class)
+                .build();
+
+        assertThat(isolater.invoke("native").join()).isNotEqualTo("ChildFirstUrlClassLoader");
+        assertThat(isolater.getStatistics().getRoute()).isEqualTo(Route.JVM);
+        assertThat(isolater.getStatistics().getEscalationReason()).contains("UnsatisfiedLinkError");
+
+        assertThat(isolater.invoke("native").join()).isNotEqualTo("ChildFirstUrlClassLoader");
+        Statistics statistics = isolater.getStatistics();
+        assertThat(statistics.getClassLoaderInvocations()).isEqualTo(1);
+        assertThat(statistics.getJvmInvocations()).isEqualTo(2);
+    }
+
+    @Test
+    public void cpuTimeBudgetEscalatesToJvm() {
+        AdaptiveIsolater isolater = Jisolate.adaptiveIsolation()
+                .withIsolatableClass(AdaptiveIsolatable.class)
+                .withCpuTimeBudget(Duration.ofMillis(1))
+                .build();
+
+        assertThat(isolater.invoke("burn").join()).isEqualTo("ChildFirstUrlClassLoader");
+        Statistics statistics = isolater.getStatistics();
+        assertThat(statistics.getRoute()).isEqualTo(Route.JVM);
+        assertThat(statistics.getEscalationReason()).contains("CPU time");
+
+        assertThat(isolater.invoke("echo").join()).isNotEqualTo("ChildFirstUrlClassLoader");
+        assertThat(isolater.getStatistics().getJvmInvocations()).isEqualTo(1);
+    }
+
+    @Test
+    public void builtIsolatersAreIndependent() {
+        AdaptiveIsolater.Builder builder = Jisolate.adaptiveIsolation()
+                .withIsolatableClass(AdaptiveIsolatable.class);
+        AdaptiveIsolater escalated = builder.build();
+        escalated.invoke("native").join();
+        assertThat(escalated.getStatistics().getRoute()).isEqualTo(Route.JVM);
+
+        AdaptiveIsolater isolater = builder.build();
+        assertThat(isolater).isNotSameAs(escalated);
+        Statistics statistics = isolater.getStatistics();
+        assertThat(statistics.getRoute()).isEqualTo(Route.CLASS_LOADER);
+        assertThat(statistics.getClassLoaderInvocations()).isEqualTo(0);
+    }
+
+    @Test
+    public void applicationFailuresAreNotEscalated() {
+        AdaptiveIsolater isolater = Jisolate.adaptiveIsolation()
+                .withIsolatableClass(AdaptiveIsolatable.class)
+                .build();
+
+        assertThatThrownBy(() -> isolater.invoke("invalid").join())
+                .isInstanceOf(CompletionException.class)
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+        Statistics statistics = isolater.getStatistics();
+        assertThat(statistics.getRoute()).isEqualTo(Route.CLASS_LOADER);
+        assertThat(statistics.getJvmInvocations()).isEqualTo(0);
+    }
+
+    @Test
+    public void isolatersShareContract() {
+        Isolater classLoaderIsolater = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(AdaptiveIsolatable.class)
+                .build();
+        Isolater jvmIsolater = Jisolate.jvmIsolation()
+                .withMainClass(AdaptiveIsolatable.class)
+                .build();
+
+        assertThat(classLoaderIsolater.invoke("echo").join()).isEqualTo("ChildFirstUrlClassLoader");
+        assertThat(jvmIsolater.invoke("echo").join()).isNotEqualTo("ChildFirstUrlClassLoader");
+    }
+}
@@ -16,6 +16,7 @@
 package com.jisolate;
 
 import com.jisolate.jvm.JvmIsolate;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -46,6 +47,11 @@ public class JisolateTest {
         System.setProperty(SYSTEM_PROPERTY_NAME, SYSTEM_PROPERTY_VALUE);
     }
 
+    @After
+    public void tearDown() {
+        System.clearProperty(SYSTEM_PROPERTY_NAME);
+    }
+
     @Test
     public void classLoaderIsolation() throws IOException, InterruptedException {
         Jisolate.classLoaderIsolation().withIsolatableClass(IsolatedClass.class).withIsolatableArguments(FILE_CONTENTS).isolate();
@@ -75,7 +81,7 @@ public class JisolateTest {
         assertEquals(SYSTEM_PROPERTY_VALUE, System.getProperty(SYSTEM_PROPERTY_NAME));
         assertEquals(0, IsolatedClass.numberOfInvocations.get());
 
-        // Give stream gobblers time to log output of isolate
+        // Give the output reactor time to log output of isolate
         Thread.sleep(100);
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final BoundedCache<String, String> cache = new BoundedCache<>(2);
+
+    @Test
+    public void cachedValueIsLoadedOnce() {
+        assertThat(get("a")).isEqualTo("A");
+        assertThat(get("a")).isEqualTo("A");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void oldestValueIsEvicted() {
+        get("a");
+        get("b");
+        get("c");
+        assertThat(cache.size()).isEqualTo(2);
+
+        get("c");
+        get("b");
+        assertThat(loads.get()).isEqualTo(3);
+        get("a");
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void oldestValuesAreEvictedOnceMaxWeightIsExceeded() {
+        BoundedCache<String, String> weighedCache = new BoundedCache<>(10, 5, String::length);
+        weighedCache.get("a", k -> "aa");
+        weighedCache.get("b", k -> "bb");
+        weighedCache.get("c", k -> "cc");
+
+        assertThat(weighedCache.size()).isEqualTo(2);
+        assertThat(weighedCache.weight()).isEqualTo(4);
+    }
+
+    private String get(String key) {
+        return cache.get(key, k -> {
+            loads.incrementAndGet();
+            return k.toUpperCase();
+        });
+    }
+}
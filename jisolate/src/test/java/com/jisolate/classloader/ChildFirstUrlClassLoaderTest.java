@@ -21,6 +21,11 @@ import org.junit.Test;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -62,6 +67,37 @@ public class ChildFirstUrlClassLoaderTest {
         assertThat(isolatedClass).isNotEqualTo(nonIsolatedClass);
     }
 
+    @Test
+    public void concurrentlyLoadedClassIsDefinedOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Class<?>>> classes = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                classes.add(executor.submit(() -> isolatedClassLoader.loadClass(CLASS_NAME)));
+
+            Class<?> isolatedClass = classes.get(0).get();
+            assertThat(isolatedClass.getClassLoader()).isSameAs(isolatedClassLoader);
+            for (Future<Class<?>> clazz : classes)
+                assertThat(clazz.get()).isSameAs(isolatedClass);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void missingResourceIsNotFound() {
+        assertThat(isolatedClassLoader.getResource("META-INF/services/com.jisolate.Missing")).isNull();
+        assertThat(isolatedClassLoader.getResource("META-INF/services/com.jisolate.Missing")).isNull();
+    }
+
+    @Test
+    public void resourcesAreFoundOnce() throws Exception {
+        String name = CLASS_NAME.replace('.', '/') + ".class";
+        List<URL> resources = Collections.list(isolatedClassLoader.getResources(name));
+        assertThat(resources).containsExactly(isolatedClassLoader.getResource(name));
+        assertThat(Collections.list(isolatedClassLoader.getResources(name))).isEqualTo(resources);
+    }
+
     @Before
     public void setUp() {
         URL[] urls = UrlProvider.getClassPathUrls(new ArrayList<>());
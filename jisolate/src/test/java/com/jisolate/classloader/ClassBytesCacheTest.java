@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClassBytesCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mappedJarReadsSameEntriesAsJarFile() throws Exception {
+        File jar = Paths.get(Assertions.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toFile();
+        MappedJar mappedJar = MappedJar.open(jar);
+
+        assertThat(mappedJar).isNotNull();
+        try (JarFile jarFile = new JarFile(jar)) {
+            assertThat(mappedJar.getManifest()).isEqualTo(jarFile.getManifest());
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                if (!entry.isDirectory()) {
+                    try (InputStream in = jarFile.getInputStream(entry)) {
+                        assertThat(mappedJar.read(entry.getName())).as(entry.getName()).isEqualTo(in.readAllBytes());
+                    }
+                }
+            }
+        }
+        assertThat(mappedJar.read("org/assertj/Missing.class")).isNull();
+    }
+
+    @Test
+    public void mappedJarReadsStoredAndDeflatedEntries() throws IOException {
+        File jar = temporaryFolder.newFile("test.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            byte[] stored = "stored".getBytes(UTF_8);
+            JarEntry storedEntry = new JarEntry("foo/Stored.class");
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCrc(crc.getValue());
+            out.putNextEntry(storedEntry);
+            out.write(stored);
+            out.putNextEntry(new JarEntry("foo/Deflated.class"));
+            out.write(String.join("", Collections.nCopies(100, "deflated")).getBytes(UTF_8));
+        }
+
+        MappedJar mappedJar = MappedJar.open(jar);
+        assertThat(new String(mappedJar.read("foo/Stored.class"), UTF_8)).isEqualTo("stored");
+        assertThat(new String(mappedJar.read("foo/Deflated.class"), UTF_8)).hasSize(800).startsWith("deflated");
+        assertThat(mappedJar.getManifest()).isNull();
+    }
+
+    @Test
+    public void signedJarIsNotMapped() throws IOException {
+        File jar = temporaryFolder.newFile("signed.jar");
+        writeJar(jar, "META-INF/SIGNER.SF", "foo/Foo.class");
+
+        assertThat(MappedJar.open(jar)).isNull();
+        assertThat(new ClassBytesCache(1024).getJar(jar)).isNull();
+    }
+
+    @Test
+    public void multiReleaseJarIsNotMapped() throws IOException {
+        File jar = temporaryFolder.newFile("multi-release.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            out.putNextEntry(new JarEntry("foo/Foo.class"));
+            out.putNextEntry(new JarEntry("META-INF/versions/9/foo/Foo.class"));
+        }
+
+        assertThat(MappedJar.open(jar)).isNull();
+        assertThat(new ClassBytesCache(1024).getJar(jar)).isNull();
+    }
+
+    @Test
+    public void corruptJarIsNotMapped() throws IOException {
+        File jar = temporaryFolder.newFile("corrupt.jar");
+        writeJar(jar, "foo/Foo.class");
+        byte[] bytes = Files.readAllBytes(jar.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int centralDirectoryOffset = buffer.getInt(bytes.length - 22 + 16);
+        buffer.putInt(centralDirectoryOffset + 42, Integer.MAX_VALUE - 1);
+        Files.write(jar.toPath(), bytes);
+
+        assertThatThrownBy(() -> MappedJar.open(jar)).isInstanceOf(IOException.class);
+        assertThat(new ClassBytesCache(1024).getJar(jar)).isNull();
+    }
+
+    @Test
+    public void cacheIsBoundedByClassBytes() throws IOException {
+        File jar = temporaryFolder.newFile("test.jar");
+        writeJar(jar, "foo/A.class", "foo/B.class", "foo/C.class");
+        ClassBytesCache cache = new ClassBytesCache(10);
+        MappedJar mappedJar = cache.getJar(jar);
+
+        assertThat(cache.getClassBytes(mappedJar, "foo/A.class")).hasSize(6);
+        assertThat(cache.getClassBytes(mappedJar, "foo/B.class")).hasSize(6);
+        assertThat(cache.getClassBytes(mappedJar, "foo/C.class")).hasSize(6);
+        assertThat(cache.getClassBytes(mappedJar, "foo/Missing.class")).isNull();
+        assertThat(cache.getCachedBytes()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    public void changedJarIsMappedAgain() throws IOException {
+        File jar = temporaryFolder.newFile("test.jar");
+        writeJar(jar, "foo/Foo.class");
+        ClassBytesCache cache = new ClassBytesCache(1024);
+        MappedJar mappedJar = cache.getJar(jar);
+        assertThat(cache.getJar(jar)).isSameAs(mappedJar);
+
+        writeJar(jar, "bar/Bar.class");
+        assertThat(jar.setLastModified(jar.lastModified() + 2000)).isTrue();
+
+        MappedJar changedJar = cache.getJar(jar);
+        assertThat(changedJar).isNotSameAs(mappedJar);
+        assertThat(cache.getClassBytes(changedJar, "foo/Foo.class")).isNull();
+        assertThat(cache.getClassBytes(changedJar, "bar/Bar.class")).hasSize(6);
+    }
+
+    @Test
+    public void mappedJarsAreBounded() throws IOException {
+        ClassBytesCache cache = new ClassBytesCache(1024);
+        for (int i = 0; i <= ClassBytesCache.MAX_MAPPED_JARS; i++) {
+            File jar = temporaryFolder.newFile("test" + i + ".jar");
+            writeJar(jar, "foo/Foo.class");
+            assertThat(cache.getJar(jar)).isNotNull();
+        }
+        assertThat(cache.getMappedJarCount()).isLessThanOrEqualTo(ClassBytesCache.MAX_MAPPED_JARS);
+    }
+
+    @Test
+    public void jarTruncatedWhileMappedFailsWithIOException() throws IOException {
+        File jar = temporaryFolder.newFile("test.jar");
+        writeJar(jar, "foo/Foo.class");
+        ClassBytesCache cache = new ClassBytesCache(1024);
+        MappedJar mappedJar = cache.getJar(jar);
+
+        try (RandomAccessFile file = new RandomAccessFile(jar, "rw")) {
+            file.setLength(0);
+        }
+        assertThatThrownBy(() -> cache.getClassBytes(mappedJar, "foo/Foo.class")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void isolatedClassLoadersDefineClassesFromCachedBytes() throws Exception {
+        URL[] urls = {Assertions.class.getProtectionDomain().getCodeSource().getLocation()};
+        try (ChildFirstUrlClassLoader classLoader1 = new ChildFirstUrlClassLoader(urls, getClass().getClassLoader());
+             ChildFirstUrlClassLoader classLoader2 = new ChildFirstUrlClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> class1 = classLoader1.loadClass(Assertions.class.getName());
+            Class<?> class2 = classLoader2.loadClass(Assertions.class.getName());
+
+            assertThat(class1).isNotSameAs(class2).isNotSameAs(Assertions.class);
+            assertThat(class2.getProtectionDomain().getCodeSource().getLocation()).isEqualTo(urls[0]);
+            assertThat(class2.getPackage().getName()).isEqualTo("org.assertj.core.api");
+            assertThat(ClassBytesCache.getDefault().getCachedBytes()).isPositive();
+        }
+    }
+
+    private static void writeJar(File jar, String... entryNames) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entryName : entryNames) {
+                out.putNextEntry(new JarEntry(entryName));
+                out.write("foobar".getBytes(UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+}
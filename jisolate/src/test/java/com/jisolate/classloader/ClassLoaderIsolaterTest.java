@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.Jisolate;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClassLoaderIsolaterTest {
+
+    @Test
+    public void isolateAsyncReturnsResultOfCallMethod() throws Exception {
+        List<CompletableFuture<Object>> results = range(0, 20)
+                .mapToObj(i -> Jisolate.classLoaderIsolation()
+                        .withIsolatableClass(CallableClass.class)
+                        .withIsolatableArguments("call" + i)
+                        .isolateAsync())
+                .collect(toList());
+
+        for (int i = 0; i < results.size(); i++)
+            assertThat(results.get(i).get()).isEqualTo("call" + i + " 1");
+        assertThat(CallableClass.invocations.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void isolateAsyncPropagatesFailure() {
+        CompletableFuture<Object> result = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(MessageWrapper.class)
+                .isolateAsync();
+
+        assertThatThrownBy(result::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasStackTraceContaining("contained neither a static main(String[]) nor a call(Object...) method");
+    }
+
+    @Test
+    public void isolateAsyncUsesSuppliedExecutor() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        Executor executor = command -> {
+            executions.incrementAndGet();
+            command.run();
+        };
+
+        Object result = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CallableClass.class)
+                .withIsolatableArguments("foo")
+                .withExecutor(executor)
+                .isolateAsync().get();
+
+        assertThat(result).isEqualTo("foo 1");
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void sharedJarsAreLoadedOncePerParent() throws Exception {
+        ClassLoaderIsolater.Builder builder = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CallableClass.class)
+                .withSharedJars("assertj-core");
+        try (IsolationSession session1 = builder.openSession(); IsolationSession session2 = builder.openSession()) {
+            Class<?> sharedClass = session1.getClassLoader().loadClass(Assertions.class.getName());
+            assertThat(session2.getClassLoader().loadClass(Assertions.class.getName())).isSameAs(sharedClass);
+            assertThat(sharedClass).isNotSameAs(Assertions.class);
+            assertThat(session1.getIsolatedClass()).isNotSameAs(session2.getIsolatedClass());
+        }
+    }
+
+    @Test
+    public void sharedLayerIsClosedWithLastIsolation() throws Exception {
+        ClassLoaderIsolater.Builder builder = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CallableClass.class)
+                .withSharedJars("assertj-core");
+        int openLayers = SharedLayers.size();
+        ClassLoader sharedClassLoader;
+        try (IsolationSession session = builder.openSession()) {
+            sharedClassLoader = session.getClassLoader().getParent();
+            assertThat(SharedLayers.size()).isEqualTo(openLayers + 1);
+        }
+        assertThat(SharedLayers.size()).isEqualTo(openLayers);
+
+        try (IsolationSession session = builder.openSession()) {
+            assertThat(session.getClassLoader().getParent()).isNotSameAs(sharedClassLoader);
+        }
+    }
+
+    @Test
+    public void sharedPackagesAreLoadedByParent() throws Exception {
+        try (IsolationSession session = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CallableClass.class)
+                .withSharedPackages("org.assertj")
+                .openSession()) {
+            assertThat(session.getClassLoader().loadClass(Assertions.class.getName())).isSameAs(Assertions.class);
+            assertThat(session.getIsolatedClass()).isNotSameAs(CallableClass.class);
+        }
+    }
+
+    @Test
+    public void isolatedThreadsAreStoppedOnCompletion() throws Exception {
+        Object threadName = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(ThreadStartingClass.class)
+                .withIsolatableArguments("onCompletion")
+                .isolateAsync().get();
+
+        // The isolation is torn down once its result is available
+        await().atMost(10, TimeUnit.SECONDS).until(() -> Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(t -> t.getName().equals(threadName)));
+    }
+
+    @Test
+    public void isolatedClassLoaderIsGarbageCollectedAfterTeardown() throws Exception {
+        ClassLoaderLeakDetector leakDetector = ClassLoaderLeakDetector.getDefault();
+        Jisolate.classLoaderIsolation()
+                .withIsolatableClass(ThreadStartingClass.class)
+                .withIsolatableArguments("collected")
+                .isolateAsync().get();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            System.gc();
+            return leakDetector.getTrackedCount() == 0;
+        });
+    }
+
+    @Test
+    public void isolateAllReturnsResultsInOrderOfArguments() {
+        List<Object> results = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(SleepingClass.class)
+                .isolateAll(range(0, 20).mapToObj(i -> new Object[]{i, 20 - i}), 4)
+                .collect(toList());
+
+        assertThat(results).containsExactlyElementsOf(range(0, 20).boxed().collect(toList()));
+    }
+
+    @Test
+    public void isolateAllUnorderedReturnsResultsAsInvocationsComplete() {
+        List<Object> results = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(SleepingClass.class)
+                .isolateAllUnordered(range(0, 10).mapToObj(i -> new Object[]{i, i == 0 ? 1000 : 0}), 2)
+                .collect(toList());
+
+        assertThat(results).containsExactlyInAnyOrderElementsOf(range(0, 10).boxed().collect(toList()));
+        assertThat(results.get(0)).isNotEqualTo(0);
+    }
+
+    @Test
+    public void isolateAllLoadsIsolatableClassOnce() {
+        List<Object> results = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CountingClass.class)
+                .isolateAll(range(0, 50).mapToObj(i -> new Object[]{"batch"}), 4)
+                .collect(toList());
+
+        assertThat(results).containsExactlyInAnyOrderElementsOf(range(1, 51).mapToObj(i -> "batch " + i)
+                .collect(toList()));
+        assertThat(CountingClass.invocations.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void isolateAllOnlyPullsArgumentsWhichFitIntoWindow() {
+        AtomicInteger pulled = new AtomicInteger();
+        try (Stream<Object> results = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(SleepingClass.class)
+                .isolateAll(range(0, 1000).peek(i -> pulled.incrementAndGet())
+                        .mapToObj(i -> new Object[]{i, 0}), 2)) {
+
+            assertThat(results.limit(3).collect(toList())).containsExactly(0, 1, 2);
+            assertThat(pulled.get()).isLessThanOrEqualTo(3 + 4);
+        }
+    }
+
+    @Test
+    public void isolateAllPropagatesFailure() {
+        Stream<Object> results = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(SleepingClass.class)
+                .isolateAll(Stream.of(new Object[]{1, 0}, new Object[]{2, "notAnInteger"}), 2);
+
+        assertThatThrownBy(() -> results.collect(toList()))
+                .isInstanceOf(RuntimeException.class)
+                .hasStackTraceContaining("ClassCastException");
+    }
+}
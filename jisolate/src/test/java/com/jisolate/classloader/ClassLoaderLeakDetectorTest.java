@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassLoaderLeakDetectorTest {
+
+    @Test
+    public void collectedClassLoaderIsNotReported() {
+        ClassLoaderLeakDetector leakDetector = new ClassLoaderLeakDetector(Duration.ofMillis(1));
+        leakDetector.track(new URLClassLoader(new URL[0]), "collected");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            System.gc();
+            return leakDetector.getTrackedCount() == 0;
+        });
+        assertThat(leakDetector.getLeaks()).isEmpty();
+    }
+
+    @Test
+    public void referencedClassLoaderIsReportedAfterOldCollection() throws Exception {
+        ClassLoaderLeakDetector leakDetector = new ClassLoaderLeakDetector(Duration.ofMillis(1));
+        ClassLoader classLoader = new URLClassLoader(new URL[0]);
+        leakDetector.track(classLoader, "leaked");
+        Thread.sleep(10);
+        assertThat(leakDetector.getLeaks()).isEmpty();
+
+        long oldCollections = ClassLoaderLeakDetector.getOldCollectionCount();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            System.gc();
+            return ClassLoaderLeakDetector.getOldCollectionCount() > oldCollections;
+        });
+        leakDetector.getLeaks();
+        Thread.sleep(10);
+
+        assertThat(leakDetector.getLeaks()).extracting(ClassLoaderLeakDetector.Leak::getDescription)
+                .containsExactly("leaked");
+        assertThat(classLoader).isNotNull();
+    }
+}
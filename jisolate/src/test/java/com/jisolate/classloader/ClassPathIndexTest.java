@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import javax.tools.ToolProvider;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassPathIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File indexDir;
+
+    @Before
+    public void setUp() throws IOException {
+        indexDir = temporaryFolder.newFolder("index");
+        System.setProperty(ClassPathIndex.INDEX_DIR_PROPERTY, indexDir.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ClassPathIndex.INDEX_DIR_PROPERTY);
+    }
+
+    @Test
+    public void findsRootsOfClassPathPackages() {
+        ClassPathIndex index = ClassPathIndex.of(UrlProvider.getClassPathUrls(new ArrayList<>()));
+
+        assertThat(index.isComplete()).isTrue();
+        assertThat(index.getRoots("com/jisolate/classloader/IsolatableClass.class")).isNotEmpty();
+        assertThat(index.getRoots("org/assertj/core/api/Assertions.class")).hasSize(1);
+        assertThat(index.getRoots("java/lang/String.class")).isEmpty();
+    }
+
+    @Test
+    public void indexFileIsInvalidatedWhenJarChanges() throws Exception {
+        File jar = new File(temporaryFolder.getRoot(), "test.jar");
+        writeJar(jar, "foo/Foo.class");
+        URL[] urls = {jar.toURI().toURL()};
+
+        assertThat(ClassPathIndex.of(urls).getRoots("foo/Foo.class")).hasSize(1);
+        assertThat(indexDir.listFiles()).hasSize(1);
+
+        writeJar(jar, "bar/baz/Bar.class", "bar/baz/Qux.class");
+        assertThat(jar.setLastModified(jar.lastModified() + 2000)).isTrue();
+
+        ClassPathIndex index = ClassPathIndex.of(urls);
+        assertThat(index.getRoots("foo/Foo.class")).isEmpty();
+        assertThat(index.getRoots("bar/baz/Bar.class")).hasSize(1);
+    }
+
+    @Test
+    public void directoryIndexSeesNewPackages() throws Exception {
+        File dir = temporaryFolder.newFolder("classes");
+        Files.write(new File(temporaryFolder.newFolder("classes", "foo"), "Foo.class").toPath(), new byte[0]);
+        URL[] urls = {dir.toURI().toURL()};
+
+        assertThat(ClassPathIndex.of(urls).getRoots("foo/Foo.class")).hasSize(1);
+        assertThat(ClassPathIndex.of(urls).getRoots("bar/Bar.class")).isEmpty();
+
+        File barDir = new File(dir, "bar");
+        assertThat(barDir.mkdir()).isTrue();
+        Files.write(new File(barDir, "Bar.class").toPath(), new byte[0]);
+        assertThat(dir.setLastModified(dir.lastModified() + 2000)).isTrue();
+
+        ClassPathIndex index = ClassPathIndex.of(urls);
+        assertThat(index.getRoots("foo/Foo.class")).hasSize(1);
+        assertThat(index.getRoots("bar/Bar.class")).hasSize(1);
+    }
+
+    @Test
+    public void multiReleaseJarServesVersionedClasses() throws Exception {
+        String releaseSource = "package mr; public class Release { public String toString() { return \"%s\"; } }";
+        File baseDir = compile("base", "mr/Release.java", String.format(releaseSource, "base"));
+        File versionedDir = compile("versioned", "mr/Release.java", String.format(releaseSource, "versioned"),
+                "mr/only/Versioned.java", "package mr.only; public class Versioned { }");
+        File jar = new File(temporaryFolder.getRoot(), "multi-release.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            addEntry(out, "mr/Release.class", new File(baseDir, "mr/Release.class"));
+            addEntry(out, "META-INF/versions/9/mr/Release.class", new File(versionedDir, "mr/Release.class"));
+            addEntry(out, "META-INF/versions/9/mr/only/Versioned.class",
+                    new File(versionedDir, "mr/only/Versioned.class"));
+        }
+
+        URL[] urls = {jar.toURI().toURL()};
+        assertThat(ClassPathIndex.of(urls).getRoots("mr/only/Versioned.class")).hasSize(1);
+        try (ChildFirstUrlClassLoader classLoader = new ChildFirstUrlClassLoader(urls, getClass().getClassLoader())) {
+            Object release = classLoader.loadClass("mr.Release").getConstructor().newInstance();
+            assertThat(release.toString()).isEqualTo("versioned");
+            assertThat(classLoader.loadClass("mr.only.Versioned").getClassLoader()).isSameAs(classLoader);
+        }
+    }
+
+    /**
+     * Compiles the sources, given as pairs of path and content, and returns the directory of the class files.
+     */
+    private File compile(String name, String... pathsAndSources) throws IOException {
+        File sourceDir = temporaryFolder.newFolder(name + "-src");
+        File classesDir = temporaryFolder.newFolder(name);
+        List<String> arguments = new ArrayList<>(asList("-d", classesDir.getPath()));
+        for (int i = 0; i < pathsAndSources.length; i += 2) {
+            File source = new File(sourceDir, pathsAndSources[i]);
+            Files.createDirectories(source.getParentFile().toPath());
+            Files.write(source.toPath(), pathsAndSources[i + 1].getBytes(UTF_8));
+            arguments.add(source.getPath());
+        }
+        assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(new String[0])))
+                .isEqualTo(0);
+        return classesDir;
+    }
+
+    private static void addEntry(JarOutputStream out, String entryName, File file) throws IOException {
+        out.putNextEntry(new JarEntry(entryName));
+        out.write(Files.readAllBytes(file.toPath()));
+        out.closeEntry();
+    }
+
+    private static void writeJar(File jar, String... entryNames) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entryName : entryNames) {
+                out.putNextEntry(new JarEntry(entryName));
+                out.write(new byte[]{1, 2, 3});
+                out.closeEntry();
+            }
+        }
+    }
+}
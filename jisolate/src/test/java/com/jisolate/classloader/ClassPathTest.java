@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassPathTest {
+
+    private static final String CLASS_PATH_PROPERTY = "surefire.test.class.path";
+
+    @Test
+    public void currentClassPathIsCached() {
+        assertThat(ClassPath.current()).isSameAs(ClassPath.current());
+    }
+
+    @Test
+    public void classPathIsReparsedWhenPropertyChanges() {
+        String classPath = System.getProperty(CLASS_PATH_PROPERTY);
+        try {
+            System.setProperty(CLASS_PATH_PROPERTY, String.join(File.pathSeparator, "/lib/a.jar", "/lib/b.jar",
+                    System.getProperty("java.home") + "/lib/jrt-fs.jar"));
+            assertThat(ClassPath.current().getElements()).containsExactly("/lib/a.jar", "/lib/b.jar");
+        } finally {
+            if (classPath == null)
+                System.clearProperty(CLASS_PATH_PROPERTY);
+            else
+                System.setProperty(CLASS_PATH_PROPERTY, classPath);
+        }
+        assertThat(ClassPath.current().getElements()).hasSize(classPath.split(File.pathSeparator).length);
+    }
+
+    @Test
+    public void urlsAreSelectedByExclusionsAndInclusions() {
+        ClassPath classPath = ClassPath.current();
+        URL[] allUrls = classPath.getUrls(JarMatcher.of(emptyList()), null);
+        URL[] urlsWithoutAssertj = classPath.getUrls(JarMatcher.of(asList("glob:assertj-core-*.jar")), null);
+        URL[] assertjUrls = classPath.getUrls(JarMatcher.of(emptyList()), JarMatcher.of(asList("assertj-core")));
+
+        assertThat(allUrls).hasSize(classPath.getElements().size());
+        assertThat(urlsWithoutAssertj).hasSize(allUrls.length - 1).doesNotContain(assertjUrls);
+        assertThat(assertjUrls).hasSize(1);
+        assertThat(classPath.getUrls(JarMatcher.of(emptyList()), null)).isNotSameAs(allUrls).isEqualTo(allUrls);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CountingClass {
+
+    static final AtomicInteger invocations = new AtomicInteger();
+
+    public static void main(String[] args) {
+        invocations.addAndGet(Integer.parseInt(args[0]));
+    }
+
+    public Object call(Object... args) {
+        return args[0] + " " + invocations.incrementAndGet();
+    }
+}
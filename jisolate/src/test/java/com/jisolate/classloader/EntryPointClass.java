@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.classloader.entrypoint.Greeter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class EntryPointClass implements Callable<Object>, Function<Object, Object>, Greeter {
+
+    static final AtomicInteger invocations = new AtomicInteger();
+
+    @Override
+    public Object call() {
+        return "called " + invocations.incrementAndGet();
+    }
+
+    @Override
+    public Object apply(Object arg) {
+        return arg + " " + invocations.incrementAndGet();
+    }
+
+    @Override
+    public String greet(String name) {
+        return "Hello " + name + " " + invocations.incrementAndGet();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.Jisolate;
+import com.jisolate.classloader.entrypoint.Greeter;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IsolationSessionTest {
+
+    @Test
+    public void invocationsShareIsolatedClassLoader() {
+        try (IsolationSession session = openSession()) {
+            assertThat(session.call("a")).isEqualTo("a 1");
+            assertThat(session.call("b")).isEqualTo("b 2");
+            session.main("10");
+            assertThat(session.call("c")).isEqualTo("c 13");
+
+            assertThat(session.getIsolatedClass()).isNotEqualTo(CountingClass.class);
+            assertThat(session.getIsolatedClass().getClassLoader()).isSameAs(session.getClassLoader());
+        }
+        assertThat(CountingClass.invocations.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void sessionsAreIsolatedFromEachOther() {
+        try (IsolationSession session1 = openSession(); IsolationSession session2 = openSession()) {
+            assertThat(session1.call("a")).isEqualTo("a 1");
+            assertThat(session2.call("b")).isEqualTo("b 1");
+            assertThat(session1.getIsolatedClass()).isNotEqualTo(session2.getIsolatedClass());
+        }
+    }
+
+    @Test
+    public void closedSessionRejectsInvocations() {
+        IsolationSession session = openSession();
+        session.close();
+        assertThat(session.isClosed()).isTrue();
+        assertThatThrownBy(() -> session.call("a")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void callableAndFunctionAreInvokedWithoutCallMethod() {
+        try (IsolationSession session = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(EntryPointClass.class)
+                .openSession()) {
+            assertThat(session.call()).isEqualTo("called 1");
+            assertThat(session.call("a")).isEqualTo("a 2");
+            assertThatThrownBy(() -> session.call("a", "b")).hasMessageContaining("can't be invoked");
+
+            @SuppressWarnings("unchecked")
+            Function<Object, Object> function = session.newInstance(Function.class);
+            assertThat(function.apply("b")).isEqualTo("b 3");
+        }
+        assertThat(EntryPointClass.invocations.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void newInstanceReturnsSharedEntryPointInterface() {
+        try (IsolationSession session = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(EntryPointClass.class)
+                .withSharedPackages(Greeter.class.getPackage().getName())
+                .openSession()) {
+            Greeter greeter = session.newInstance(Greeter.class);
+            assertThat(greeter.greet("a")).isEqualTo("Hello a 1");
+            assertThat(greeter.getClass()).isNotEqualTo(EntryPointClass.class);
+        }
+    }
+
+    @Test
+    public void newInstanceRejectsIsolatedEntryPointInterface() {
+        try (IsolationSession session = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(EntryPointClass.class)
+                .openSession()) {
+            assertThatThrownBy(() -> session.newInstance(Greeter.class))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("may have to be shared");
+        }
+    }
+
+    private IsolationSession openSession() {
+        return Jisolate.classLoaderIsolation().withIsolatableClass(CountingClass.class).openSession();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jisolate.classloader;
+
+import com.jisolate.Jisolate;
+import com.jisolate.properties.PropertyScope;
+import com.jisolate.properties.ThreadLocalProperties;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IsolationTemplateTest {
+
+    @Test
+    public void isolationsAreServedFromWarmedUpSessions() {
+        try (IsolationTemplate template = openTemplate(2)) {
+            await().atMost(10, TimeUnit.SECONDS).until(() -> template.getReadyCount() == 2);
+
+            assertThat(template.call("a")).isEqualTo("a 2");
+            assertThat(template.call("b")).isEqualTo("b 2");
+            assertThat(template.getMissCount()).isEqualTo(0);
+        }
+        assertThat(CountingClass.invocations.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void takenSessionsAreReplenishedInBackground() {
+        try (IsolationTemplate template = openTemplate(2)) {
+            await().atMost(10, TimeUnit.SECONDS).until(() -> template.getReadyCount() == 2);
+            try (IsolationSession session1 = template.take(); IsolationSession session2 = template.take()) {
+                assertThat(session1.getClassLoader()).isNotSameAs(session2.getClassLoader());
+                await().atMost(10, TimeUnit.SECONDS).until(() -> template.getReadyCount() == 2);
+            }
+        }
+    }
+
+    @Test
+    public void closedTemplateClosesPreparedSessions() {
+        IsolationTemplate template = openTemplate(1);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> template.getReadyCount() == 1);
+        template.close();
+
+        assertThat(template.getReadyCount()).isEqualTo(0);
+        assertThatThrownBy(() -> template.call("a")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void sessionsArePreparedWithPropertiesOfOpeningThread() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(() -> {
+        });
+        AtomicReference<String> warmUpValue = new AtomicReference<>();
+        ThreadLocalProperties.activate();
+        ThreadLocalProperties.setScope(new PropertyScope());
+        System.setProperty("jisolate.templateTest", "scoped");
+        try (IsolationTemplate template = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CountingClass.class)
+                .withExecutor(executor)
+                .withWarmUp(session -> warmUpValue.set(System.getProperty("jisolate.templateTest")))
+                .openTemplate(1)) {
+            await().atMost(10, TimeUnit.SECONDS).until(() -> template.getReadyCount() == 1);
+            assertThat(warmUpValue.get()).isEqualTo("scoped");
+        } finally {
+            ThreadLocalProperties.setScope(null);
+            executor.shutdown();
+        }
+        assertThat(System.getProperty("jisolate.templateTest")).isNull();
+    }
+
+    @Test
+    public void failedWarmUpIsPropagatedToCaller() {
+        try (IsolationTemplate template = Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CountingClass.class)
+                .withWarmUp(session -> session.main("notANumber"))
+                .openTemplate(1)) {
+            assertThatThrownBy(() -> template.call("a")).hasMessageContaining("Warm-up");
+            assertThat(template.getMissCount()).isEqualTo(1);
+        }
+    }
+
+    private IsolationTemplate openTemplate(int size) {
+        return Jisolate.classLoaderIsolation()
+                .withIsolatableClass(CountingClass.class)
+                .withWarmUp(session -> session.call("warm-up"))
+                .openTemplate(size);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JarMatcherTest {
+
+    @Test
+    public void plainPatternsMatchSubstrings() {
+        JarMatcher matcher = JarMatcher.of(asList("guava", " ", "commons-io "));
+
+        assertThat(matcher.matches("/repo/com/google/guava/guava-19.0.jar")).isTrue();
+        assertThat(matcher.matches("/repo/commons-io/commons-io-2.6.jar")).isTrue();
+        assertThat(matcher.matches("/repo/org/slf4j/slf4j-api.jar")).isFalse();
+    }
+
+    @Test
+    public void globPatternsMatchFileNameOrPath() {
+        JarMatcher matcher = JarMatcher.of(asList("glob:guava-*.jar", "glob:/opt/**/lib/{a,b}.jar"));
+
+        assertThat(matcher.matches("/repo/com/google/guava/guava-19.0.jar")).isTrue();
+        assertThat(matcher.matches("/repo/com/google/guava/guava-19.0.jar.sha1")).isFalse();
+        assertThat(matcher.matches("/opt/app/x/lib/b.jar")).isTrue();
+        assertThat(matcher.matches("/opt/app/x/lib/c.jar")).isFalse();
+    }
+
+    @Test
+    public void regexPatternsMatchPath() {
+        JarMatcher matcher = JarMatcher.of(asList("regex:.*/slf4j-(api|simple)-[0-9.]+\\.jar"));
+
+        assertThat(matcher.matches("/repo/org/slf4j/slf4j-api-1.7.25.jar")).isTrue();
+        assertThat(matcher.matches("/repo/org/slf4j/slf4j-log4j12-1.7.25.jar")).isFalse();
+    }
+
+    @Test
+    public void emptyMatcherMatchesNothing() {
+        assertThat(JarMatcher.of(asList()).matches("/repo/a.jar")).isFalse();
+    }
+
+    @Test
+    public void matchersAreCached() {
+        assertThat(JarMatcher.of(asList("a", "glob:b"))).isSameAs(JarMatcher.of(asList("a ", "glob:b")));
+    }
+}
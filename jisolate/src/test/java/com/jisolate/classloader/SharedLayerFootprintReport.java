@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.classloader;
+
+import com.jisolate.Jisolate;
+import org.assertj.core.api.Assertions;
+
+import java.io.File;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Reports the metaspace used by isolations which load all classes of AssertJ, once with AssertJ isolated and once
+ * with it in the shared layer.
+ * <p>
+ * Run via {@link #main(String[])}, e.g. {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jisolate.classloader.SharedLayerFootprintReport -Dexec.args=50}
+ */
+public class SharedLayerFootprintReport {
+
+    public static void main(String[] args) throws Exception {
+        int isolations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        List<String> classNames = getClassNames(new File(
+                Assertions.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+
+        System.out.printf("%-10s %12s %15s%n", "Mode", "Classes", "Metaspace (KB)");
+        report("isolated", Jisolate.classLoaderIsolation(), isolations, classNames);
+        report("shared", Jisolate.classLoaderIsolation().withSharedJars("assertj-core"), isolations, classNames);
+    }
+
+    private static void report(String mode, ClassLoaderIsolater.Builder builder, int isolations,
+                               List<String> classNames) {
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        long classesBefore = classLoading.getLoadedClassCount();
+        long metaspaceBefore = getMetaspaceUsed();
+
+        List<IsolationSession> sessions = new ArrayList<>();
+        builder.withIsolatableClass(CallableClass.class);
+        for (int i = 0; i < isolations; i++) {
+            IsolationSession session = builder.openSession();
+            sessions.add(session);
+            for (String className : classNames) {
+                try {
+                    session.getClassLoader().loadClass(className);
+                } catch (ClassNotFoundException | LinkageError e) {
+                    // Classes with optional dependencies may not be loadable
+                }
+            }
+        }
+
+        System.out.printf("%-10s %12d %15d%n", mode, classLoading.getLoadedClassCount() - classesBefore,
+                (getMetaspaceUsed() - metaspaceBefore) / 1024);
+        sessions.forEach(IsolationSession::close);
+    }
+
+    private static long getMetaspaceUsed() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getName().equals("Metaspace"))
+                .mapToLong(p -> p.getUsage().getUsed())
+                .sum();
+    }
+
+    private static List<String> getClassNames(File jar) throws Exception {
+        try (JarFile jarFile = new JarFile(jar)) {
+            return jarFile.stream()
+                    .map(e -> e.getName())
+                    .filter(n -> n.endsWith(".class") && !n.contains("-"))
+                    .map(n -> n.substring(0, n.length() - ".class".length()).replace('/', '.'))
+                    .collect(toList());
+        }
+    }
+}
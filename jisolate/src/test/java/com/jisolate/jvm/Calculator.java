@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface Calculator {
+
+    int add(int a, int b);
+
+    CompletableFuture<Integer> addAsync(int a, int b);
+
+    void fail(String message);
+
+    String getSystemProperty(String name);
+
+    int getInvocations();
+
+    Sum sum(int a, int b);
+
+    Object undeclared();
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.Jisolate;
+import com.jisolate.util.ClassPathUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Reports how long child JVMs take until their main method runs, i.e. until they send their first event, with and
+ * without a class data sharing archive. Since archives only support JARs, the directories of the class path are
+ * packaged into a JAR first.
+ * <p>
+ * Run via {@link #main(String[])}, e.g. {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jisolate.jvm.ClassDataSharingReport -Dexec.args=10}
+ */
+public class ClassDataSharingReport {
+
+    public static void main(String[] args) throws Exception {
+        int launches = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String classPath = toJarClassPath(new File("target/cds-report"));
+        System.setProperty(ClassDataSharing.ARCHIVE_DIR_PROPERTY, "target/cds-report/archives");
+        System.out.printf("%-10s %20s%n", "Mode", "Startup (ms)");
+        report("plain", classPath, false, launches);
+        report("cds", classPath, true, launches);
+    }
+
+    private static void report(String mode, String classPath, boolean classDataSharing, int launches)
+            throws Exception {
+        JvmIsolater.Builder builder = Jisolate.jvmIsolation()
+                .withInheritClassPath(false)
+                .withAdditionalCommandLineArguments(asList("-cp", classPath))
+                .withMainClass(ResultPublishingClass.class)
+                .withClassDataSharing(classDataSharing);
+
+        // The first launch warms up the file system cache and creates the archive
+        try (JvmIsolate isolate = builder.isolate()) {
+            isolate.waitFor();
+        }
+        Thread.sleep(1000);
+
+        long totalNanos = 0;
+        for (int i = 0; i < launches; i++) {
+            long startTime = System.nanoTime();
+            try (JvmIsolate isolate = builder.isolate()) {
+                isolate.events().findFirst();
+                totalNanos += System.nanoTime() - startTime;
+                isolate.waitFor();
+            }
+        }
+        System.out.printf("%-10s %20d%n", mode, TimeUnit.NANOSECONDS.toMillis(totalNanos / launches));
+    }
+
+    private static String toJarClassPath(File dir) throws IOException {
+        Files.createDirectories(dir.toPath());
+        File jar = new File(dir, "classes.jar");
+        List<String> classPath = new ArrayList<>();
+        classPath.add(jar.getAbsolutePath());
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            for (String element : ClassPathUtil.getClassPath().split(File.pathSeparator)) {
+                Path root = new File(element).toPath();
+                if (Files.isDirectory(root))
+                    addFiles(out, root);
+                else
+                    classPath.add(element);
+            }
+        }
+        return String.join(File.pathSeparator, classPath);
+    }
+
+    private static void addFiles(JarOutputStream out, Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(Files::isRegularFile).collect(toList());
+        }
+        for (Path file : files) {
+            out.putNextEntry(new JarEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+            Files.copy(file, out);
+            out.closeEntry();
+        }
+    }
+}
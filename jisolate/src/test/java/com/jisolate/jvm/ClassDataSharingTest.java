@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.Jisolate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class ClassDataSharingTest {
+
+    private static final File TEST_DATA_DIR = new File("target/test-data/cds");
+    private static final File ARCHIVE_DIR = new File(TEST_DATA_DIR, "archives");
+
+    @Before
+    public void setUp() {
+        assumeTrue(ClassDataSharing.isSupported());
+        deleteQuietly(TEST_DATA_DIR);
+        System.setProperty(ClassDataSharing.ARCHIVE_DIR_PROPERTY, ARCHIVE_DIR.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ClassDataSharing.ARCHIVE_DIR_PROPERTY);
+    }
+
+    @Test
+    public void archiveIsCreatedByFirstJvmAndUsedByLaterOnes() throws IOException {
+        // Dynamic archives only support class paths which consist of JARs
+        File jar = createJar(new File(TEST_DATA_DIR, "isolated.jar"));
+        JvmIsolater.Builder builder = Jisolate.jvmIsolation()
+                .withInheritClassPath(false)
+                .withAdditionalCommandLineArguments(asList("-cp", jar.getAbsolutePath()))
+                .withMainClass(ResultPublishingClass.class)
+                .withClassDataSharing(true);
+
+        assertThat(run(builder)).containsExactly("started", "finished");
+        await().atMost(10, SECONDS).until(() -> archives().length == 1);
+        assertThat(archives()[0].getName()).startsWith(ResultPublishingClass.class.getName()).endsWith(".jsa");
+
+        assertThat(run(builder)).containsExactly("started", "finished");
+        assertThat(archives()).hasSize(1);
+    }
+
+    @Test
+    public void rebuiltJarGetsNewArchive() throws IOException {
+        File jar = createJar(new File(TEST_DATA_DIR, "isolated.jar"));
+        JvmIsolater.Builder builder = Jisolate.jvmIsolation()
+                .withInheritClassPath(false)
+                .withAdditionalCommandLineArguments(asList("-cp", jar.getAbsolutePath()))
+                .withMainClass(ResultPublishingClass.class)
+                .withClassDataSharing(true);
+        assertThat(run(builder)).containsExactly("started", "finished");
+        await().atMost(10, SECONDS).until(() -> archives().length == 1);
+
+        createJar(jar);
+        assertThat(jar.setLastModified(jar.lastModified() + 2000)).isTrue();
+
+        assertThat(run(builder)).containsExactly("started", "finished");
+        await().atMost(10, SECONDS).until(() -> archives().length == 2);
+    }
+
+    @Test
+    public void childJvmRunsOnSameJavaInstallation() {
+        assertThat(new File(JvmIsolater.getJavaExecutable()).getParentFile().getParentFile())
+                .isEqualTo(new File(System.getProperty("java.home")));
+    }
+
+    @Test
+    public void archiveKeyUsesClassPathOfChildJvm() {
+        JvmIsolater.Builder builder = Jisolate.jvmIsolation()
+                .withMainClass(ResultPublishingClass.class)
+                .withInheritClassPath(false);
+        String environmentClassPath = System.getenv("CLASSPATH");
+        assertThat(builder.build().getExplicitClasspath())
+                .isEqualTo(environmentClassPath == null || environmentClassPath.isEmpty() ? "." : environmentClassPath);
+
+        assertThat(builder.withAdditionalCommandLineArguments(asList("-cp", "a.jar")).build().getExplicitClasspath())
+                .isEqualTo("a.jar");
+        assertThat(builder.withAdditionalCommandLineArguments(singletonList("--class-path=b.jar")).build()
+                .getExplicitClasspath()).isEqualTo("b.jar");
+        assertThat(builder.withAdditionalCommandLineArguments(singletonList("@args")).build().getExplicitClasspath())
+                .isNull();
+    }
+
+    @Test
+    public void classPathWithDirectoriesIsLaunchedWithoutArchive() {
+        JvmIsolater.Builder builder = Jisolate.jvmIsolation()
+                .withMainClass(ResultPublishingClass.class)
+                .withClassDataSharing(true);
+
+        assertThat(run(builder)).containsExactly("started", "finished");
+        assertThat(ARCHIVE_DIR).doesNotExist();
+    }
+
+    private static List<Object> run(JvmIsolater.Builder builder) {
+        try (JvmIsolate isolate = builder.isolate()) {
+            List<Object> events = isolate.events().collect(toList());
+            assertThat(isolate.waitFor()).isEqualTo(0);
+            return events;
+        }
+    }
+
+    private static File[] archives() {
+        return Objects.requireNonNull(ARCHIVE_DIR.listFiles((dir, name) -> name.endsWith(".jsa")));
+    }
+
+    private static File createJar(File jar) throws IOException {
+        Path classes = Paths.get(ParentChannel.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        Path testClasses = Paths.get(ResultPublishingClass.class.getProtectionDomain().getCodeSource().getLocation()
+                .getPath());
+        Files.createDirectories(jar.getParentFile().toPath());
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            addClasses(out, classes, "com/jisolate/jvm/");
+            addClasses(out, testClasses, "com/jisolate/jvm/ResultPublishingClass");
+        }
+        return jar;
+    }
+
+    private static void addClasses(JarOutputStream out, Path root, String classNamePrefix) throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(root)) {
+            classFiles = files.filter(f -> root.relativize(f).toString().replace(File.separatorChar, '/')
+                    .startsWith(classNamePrefix)).collect(toList());
+        }
+        for (Path classFile : classFiles) {
+            out.putNextEntry(new JarEntry(root.relativize(classFile).toString().replace(File.separatorChar, '/')));
+            Files.copy(classFile, out);
+            out.closeEntry();
+        }
+    }
+}
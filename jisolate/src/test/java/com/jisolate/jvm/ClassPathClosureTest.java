@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.IsolatedClass;
+import com.jisolate.Jisolate;
+import com.jisolate.util.ClassPathUtil;
+import org.apache.commons.io.FileUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassPathClosureTest {
+
+    @Test
+    public void referencedClassNamesIncludeSignatures() throws IOException {
+        assertThat(ClassPathClosure.getReferencedClassNames(readClassFile(JvmIsolate.class))).contains(
+                "com/jisolate/jvm/ChannelAcceptor", "java/util/concurrent/CompletableFuture", "java/lang/Integer",
+                "java/util/stream/Stream");
+    }
+
+    @Test
+    public void closureContainsOnlyReachableJars() {
+        String classPath = ClassPathUtil.getClassPath();
+        List<String> closure = split(ClassPathClosure.get(classPath, Collections.singleton(IsolatedClass.class.getName())));
+
+        assertThat(closure).contains(jarOf(FileUtils.class), jarOf(org.slf4j.Logger.class))
+                .doesNotContain(jarOf(Assertions.class));
+        assertThat(split(classPath)).containsSubsequence(closure);
+    }
+
+    @Test
+    public void closureIsFullClassPathIfRootClassIsMissing() {
+        String classPath = ClassPathUtil.getClassPath();
+        assertThat(ClassPathClosure.get(classPath, Collections.singleton("com.jisolate.Missing"))).isEqualTo(classPath);
+    }
+
+    @Test
+    public void childJvmRunsWithMinimalClassPath() {
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(ResultPublishingClass.class)
+                .withMainClassArguments("foo")
+                .withMinimalClassPath(true)
+                .isolate()) {
+            assertThat(isolate.results().collect(toList())).containsExactly(3);
+            assertThat(isolate.waitFor()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void longClassPathIsPassedViaArgumentFile() throws IOException {
+        String classPath = String.join(File.pathSeparator, Collections.nCopies(1000, "/some dir/lib.jar"));
+        List<String> arguments = JvmIsolater.getClassPathArguments(classPath);
+
+        assertThat(arguments).hasSize(1);
+        assertThat(arguments.get(0)).startsWith("@");
+        assertThat(new String(Files.readAllBytes(Paths.get(arguments.get(0).substring(1))), StandardCharsets.UTF_8))
+                .isEqualTo("-cp \"" + classPath + "\"\n");
+        assertThat(JvmIsolater.getClassPathArguments("lib.jar")).containsExactly("-cp", "lib.jar");
+    }
+
+    private static byte[] readClassFile(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String jarOf(Class<?> type) {
+        return type.getProtectionDomain().getCodeSource().getLocation().getPath();
+    }
+
+    private static List<String> split(String classPath) {
+        return Arrays.asList(classPath.split(File.pathSeparator));
+    }
+}
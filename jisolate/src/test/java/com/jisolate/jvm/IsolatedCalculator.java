@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IsolatedCalculator implements Calculator {
+
+    static class Undeclared implements Serializable {
+    }
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    @Override
+    public int add(int a, int b) {
+        invocations.incrementAndGet();
+        return a + b;
+    }
+
+    @Override
+    public CompletableFuture<Integer> addAsync(int a, int b) {
+        return CompletableFuture.supplyAsync(() -> add(a, b));
+    }
+
+    @Override
+    public void fail(String message) {
+        throw new IllegalStateException(message);
+    }
+
+    @Override
+    public String getSystemProperty(String name) {
+        return System.getProperty(name);
+    }
+
+    @Override
+    public int getInvocations() {
+        return invocations.get();
+    }
+
+    @Override
+    public Sum sum(int a, int b) {
+        return new Sum(a, b);
+    }
+
+    @Override
+    public Object undeclared() {
+        return new Undeclared();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.IsolatedClass;
+import com.jisolate.Jisolate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jisolate.JisolateTest.EXPECTED_FILE_CONTENTS;
+import static com.jisolate.JisolateTest.FILE;
+import static com.jisolate.JisolateTest.FILE_CONTENTS;
+import static com.jisolate.JisolateTest.SYSTEM_PROPERTY_NAME;
+import static com.jisolate.JisolateTest.SYSTEM_PROPERTY_VALUE;
+import static java.nio.charset.Charset.defaultCharset;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JvmIsolatePoolTest {
+
+    @Before
+    public void setUp() {
+        deleteQuietly(FILE);
+        System.setProperty(SYSTEM_PROPERTY_NAME, SYSTEM_PROPERTY_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(SYSTEM_PROPERTY_NAME);
+    }
+
+    @Test
+    public void invocationIsServedByPreSpawnedJvm() throws IOException {
+        try (JvmIsolatePool pool = pool().withSize(1).build()) {
+            await().atMost(10, SECONDS).until(() -> pool.getStatistics().getSpawned() == 1);
+
+            pool.isolate();
+
+            assertThat(readFileToString(FILE, defaultCharset())).isEqualTo(EXPECTED_FILE_CONTENTS);
+            assertThat(System.getProperty(SYSTEM_PROPERTY_NAME)).isEqualTo(SYSTEM_PROPERTY_VALUE);
+            assertThat(pool.getStatistics().getHits()).isEqualTo(1);
+            assertThat(pool.getStatistics().getMisses()).isEqualTo(0);
+            assertThat(pool.getStatistics().getRetired()).isEqualTo(1);
+            assertThat(pool.getStatistics().getAverageSpawnLatency(SECONDS)).isLessThan(10);
+        }
+    }
+
+    @Test
+    public void preSpawnedJvmIsWarmedUp() throws IOException {
+        try (JvmIsolatePool pool = pool().withSize(1).withWarmUp(IsolatedClass.class.getName(), "warm").build()) {
+            await().atMost(10, SECONDS).until(() -> pool.getStatistics().getSpawned() == 1);
+            assertThat(readFileToString(FILE, defaultCharset())).isEqualTo("warm " + SYSTEM_PROPERTY_VALUE);
+
+            pool.isolate();
+
+            // The warm-up changed the system property of the JVM which then served the invocation
+            assertThat(readFileToString(FILE, defaultCharset())).isEqualTo(FILE_CONTENTS + " moon");
+            assertThat(pool.getStatistics().getHits()).isEqualTo(1);
+            assertThat(pool.getStatistics().getRetired()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void jvmIsReusedUntilMaxUses() {
+        try (JvmIsolatePool pool = pool().withSize(0).withMaxUses(2).build()) {
+            pool.isolate();
+            pool.isolate();
+            pool.isolate();
+
+            JvmIsolatePool.Statistics statistics = pool.getStatistics();
+            assertThat(statistics.getSpawned()).isEqualTo(2);
+            assertThat(statistics.getMisses()).isEqualTo(2);
+            assertThat(statistics.getHits()).isEqualTo(1);
+            assertThat(statistics.getRetired()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void failureOfMainMethodIsPropagated() {
+        try (JvmIsolatePool pool = pool().withSize(0).withMaxUses(2).build()) {
+            assertThatThrownBy(() -> pool.isolate("com.jisolate.DoesNotExist"))
+                    .hasMessageContaining("ClassNotFoundException");
+
+            // The JVM survives failed invocations
+            pool.isolate();
+            assertThat(pool.getStatistics().getSpawned()).isEqualTo(1);
+        }
+    }
+
+    private JvmIsolatePool.Builder pool() {
+        return Jisolate.jvmIsolation()
+                .withMainClass(IsolatedClass.class)
+                // JVMs are pre-spawned by the pool's threads, which don't see the test thread's system properties
+                .withAdditionalCommandLineArguments(
+                        singletonList("-D" + SYSTEM_PROPERTY_NAME + "=" + SYSTEM_PROPERTY_VALUE))
+                .withMainClassArguments(FILE_CONTENTS)
+                .pool();
+    }
+}
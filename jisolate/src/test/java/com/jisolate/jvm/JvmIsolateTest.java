@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.IsolatedClass;
+import com.jisolate.Jisolate;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+
+import static com.jisolate.JisolateTest.FILE_CONTENTS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JvmIsolateTest {
+
+    @Test
+    public void resultsAndEventsAreReceived() {
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(ResultPublishingClass.class)
+                .withMainClassArguments("a", "bb", "ccc")
+                .isolate()) {
+            assertThat(isolate.results().collect(toList())).containsExactly(1, 2, 3);
+            assertThat(isolate.events().collect(toList())).containsExactly("started", "finished");
+            assertThat(isolate.waitFor()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void silentConnectionDoesNotDelayResults() throws Exception {
+        // Connects without ever sending a token
+        Socket silentSocket = new Socket(InetAddress.getLoopbackAddress(), ChannelAcceptor.getInstance().getPort());
+        try {
+            long startNanos = System.nanoTime();
+            try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                    .withMainClass(ResultPublishingClass.class)
+                    .withMainClassArguments("a")
+                    .isolate()) {
+                assertThat(isolate.results().collect(toList())).containsExactly(1);
+            }
+            assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofSeconds(8));
+        } finally {
+            silentSocket.close();
+        }
+    }
+
+    @Test
+    public void streamsEndIfChildSendsNothing() {
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(IsolatedClass.class)
+                .withMainClassArguments(FILE_CONTENTS)
+                .isolate()) {
+            assertThat(isolate.results().count()).isEqualTo(0);
+            assertThat(isolate.events().count()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void onExitCompletesWithExitValue() throws Exception {
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(IsolatedClass.class)
+                .withMainClassArguments(FILE_CONTENTS)
+                .isolate()) {
+            assertThat(isolate.getPid()).isPositive();
+            assertThat(isolate.onExit().get(10, SECONDS)).isEqualTo(0);
+            assertThat(isolate.isAlive()).isFalse();
+        }
+    }
+
+    @Test
+    public void shutdownTerminatesGracefully() throws Exception {
+        JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(SleepingClass.class)
+                .isolate();
+        isolate.events().findFirst();
+
+        assertThat(isolate.waitFor(100, MILLISECONDS)).isFalse();
+        assertThat(isolate.getCpuTime()).hasValueSatisfying(t -> assertThat(t.isNegative()).isFalse());
+        if (System.getProperty("os.name").startsWith("Linux"))
+            assertThat(isolate.getResidentSetSize().getAsLong()).isPositive();
+
+        assertThat(isolate.shutdown().get(10, SECONDS)).isNotEqualTo(0);
+    }
+
+    @Test
+    public void shutdownTerminatesForciblyAfterTimeout() throws Exception {
+        JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(SleepingClass.class)
+                .withMainClassArguments("ignoreTermination")
+                .withShutdownTimeout(Duration.ofMillis(500))
+                .isolate();
+        isolate.events().findFirst();
+
+        assertThat(isolate.shutdown().get(10, SECONDS)).isNotEqualTo(0);
+        assertThat(isolate.isAlive()).isFalse();
+    }
+}
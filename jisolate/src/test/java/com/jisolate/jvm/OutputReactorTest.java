@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputReactorTest {
+
+    private static class DeadProcess extends Process {
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return false;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    @Test
+    public void streamOfDeadProcessEndsWithAvailableBytes() throws Exception {
+        // The pipe stays open as if a grandchild process had inherited it, so reading past its bytes would block
+        PipedOutputStream pipe = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(pipe);
+        pipe.write("output".getBytes(UTF_8));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CountDownLatch closed = new CountDownLatch(1);
+        OutputReactor.register("dead process", new DeadProcess(), in, new OutputSink() {
+            @Override
+            public void write(ByteBuffer bytes) {
+                output.write(bytes.array(), bytes.position(), bytes.remaining());
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        });
+
+        assertThat(closed.await(10, SECONDS)).isTrue();
+        assertThat(output.toString(UTF_8.name())).isEqualTo("output");
+        pipe.close();
+    }
+}
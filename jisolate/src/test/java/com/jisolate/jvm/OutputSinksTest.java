@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.IsolatedClass;
+import com.jisolate.Jisolate;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jisolate.JisolateTest.FILE_CONTENTS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputSinksTest {
+
+    @Test
+    public void linesAreBatchedAcrossReads() throws Exception {
+        List<List<String>> batches = new ArrayList<>();
+        OutputSink sink = OutputSinks.lines(UTF_8, lines -> batches.add(new ArrayList<>(lines)));
+
+        sink.write(bytes("a\r\nb\nc"));
+        sink.write(bytes("c\n"));
+        sink.write(bytes("d"));
+        sink.close();
+
+        assertThat(batches).containsExactly(asList("a", "b"), asList("cc"), asList("d"));
+    }
+
+    @Test
+    public void ringBufferKeepsMostRecentBytes() {
+        RingBufferSink sink = OutputSinks.ringBuffer(4);
+
+        sink.write(bytes("abc"));
+        sink.write(bytes("de"));
+        assertThat(new String(sink.drain(), UTF_8)).isEqualTo("bcde");
+        assertThat(sink.getDroppedBytes()).isEqualTo(1);
+
+        sink.write(bytes("fghijk"));
+        assertThat(new String(sink.drain(), UTF_8)).isEqualTo("hijk");
+        assertThat(sink.getDroppedBytes()).isEqualTo(3);
+        assertThat(sink.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void stdOutOfChildJvmIsForwarded() {
+        ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(IsolatedClass.class)
+                .withMainClassArguments(FILE_CONTENTS)
+                .withStdOut(() -> OutputSinks.forward(stdOut))
+                .isolate()) {
+            assertThat(isolate.waitFor()).isEqualTo(0);
+            await().atMost(5, SECONDS).until(() -> stdOut.toString().contains(FILE_CONTENTS));
+        }
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(UTF_8));
+    }
+
+    private static List<String> asList(String... lines) {
+        return Arrays.asList(lines);
+    }
+}
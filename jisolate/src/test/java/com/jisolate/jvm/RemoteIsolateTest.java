@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.Jisolate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InvalidClassException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RemoteIsolateTest {
+
+    private static final String PROPERTY_NAME = RemoteIsolateTest.class.getName();
+
+    private Calculator calculator;
+
+    @Before
+    public void setUp() {
+        System.setProperty(PROPERTY_NAME, "parent");
+        calculator = Jisolate.jvmIsolation().withMainClass(IsolatedCalculator.class).isolate(Calculator.class);
+    }
+
+    @After
+    public void tearDown() {
+        ((RemoteIsolate) calculator).close();
+    }
+
+    @Test
+    public void callsAreForwardedToLongLivedIsolate() {
+        assertThat(calculator.add(1, 2)).isEqualTo(3);
+        assertThat(calculator.add(3, 4)).isEqualTo(7);
+        assertThat(calculator.getInvocations()).isEqualTo(2);
+        assertThat(calculator.getSystemProperty(PROPERTY_NAME)).isNull();
+    }
+
+    @Test
+    public void exceptionsArePropagated() {
+        assertThatThrownBy(() -> calculator.fail("boom"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+        assertThat(calculator.add(1, 1)).isEqualTo(2);
+    }
+
+    @Test
+    public void asyncCallsArePipelined() {
+        List<CompletableFuture<Integer>> results = range(0, 100).mapToObj(i -> calculator.addAsync(i, 1))
+                .collect(toList());
+
+        assertThat(results.stream().map(CompletableFuture::join).collect(toList()))
+                .isEqualTo(range(1, 101).boxed().collect(toList()));
+        RemoteIsolate.Statistics statistics = ((RemoteIsolate) calculator).getStatistics();
+        assertThat(statistics.getCalls()).isEqualTo(101);
+        assertThat(statistics.getAverageRoundTrip(NANOSECONDS)).isPositive();
+    }
+
+    @Test
+    public void declaredTypesAreDeserialized() {
+        Sum sum = calculator.sum(1, 2);
+        assertThat(sum.getValue()).isEqualTo(3);
+        assertThat(sum).hasToString("1 + 2 = 3");
+    }
+
+    @Test
+    public void undeclaredTypesAreRejected() {
+        assertThatThrownBy(() -> calculator.undeclared())
+                .isInstanceOf(UndeclaredThrowableException.class)
+                .hasRootCauseInstanceOf(InvalidClassException.class);
+    }
+
+    @Test
+    public void undeclaredTypesCanBeAllowed() {
+        System.setProperty(SerializationFilter.PATTERN_PROPERTY, IsolatedCalculator.class.getName() + "$*");
+        Calculator permissiveCalculator = Jisolate.jvmIsolation().withMainClass(IsolatedCalculator.class)
+                .isolate(Calculator.class);
+        try {
+            assertThat(permissiveCalculator.undeclared()).isInstanceOf(IsolatedCalculator.Undeclared.class);
+        } finally {
+            System.clearProperty(SerializationFilter.PATTERN_PROPERTY);
+            ((RemoteIsolate) permissiveCalculator).close();
+        }
+    }
+
+    @Test
+    public void callsFailOnceIsolateIsClosed() {
+        ((RemoteIsolate) calculator).close();
+        assertThatThrownBy(() -> calculator.add(1, 2)).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import com.jisolate.Jisolate;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceLimitsTest {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Test
+    public void limitsAreTranslatedToArguments() {
+        ResourceLimits limits = new ResourceLimits.Builder()
+                .withMaxHeapSize(256 * MEGABYTE)
+                .withMaxMetaspaceSize(64 * MEGABYTE)
+                .withGcThreads(2)
+                .withActiveProcessorCount(3)
+                .build();
+
+        assertThat(limits.getArguments()).containsExactly("-Xmx262144k", "-XX:MaxMetaspaceSize=65536k",
+                "-XX:ParallelGCThreads=2", "-XX:ActiveProcessorCount=3");
+        assertThat(new ResourceLimits.Builder().build().getArguments()).isEmpty();
+    }
+
+    @Test
+    public void budgetIsSplitAcrossIsolates() {
+        // 10000 MB minus 1000 MB for the parent JVM and 1000 MB headroom leaves 2000 MB per isolate
+        ResourceLimits limits = ResourceLimits.split(10000 * MEGABYTE, 1000 * MEGABYTE, 8, 4);
+
+        assertThat(limits.getMaxHeapSize()).hasValue((long) (2000 * MEGABYTE * 0.6));
+        assertThat(limits.getMaxMetaspaceSize()).hasValue((long) (2000 * MEGABYTE * 0.1));
+        assertThat(limits.getGcThreads()).hasValue(2);
+        assertThat(limits.getActiveProcessorCount()).hasValue(2);
+
+        ResourceLimits smallLimits = ResourceLimits.split(512 * MEGABYTE, 256 * MEGABYTE, 2, 64);
+        assertThat(smallLimits.getMaxHeapSize()).hasValue(16 * MEGABYTE);
+        assertThat(smallLimits.getActiveProcessorCount()).hasValue(1);
+    }
+
+    @Test
+    public void nothingIsSplitIfParentUsesAllMemory() {
+        ResourceLimits limits = ResourceLimits.split(1024 * MEGABYTE, 2048 * MEGABYTE, 2, 2);
+
+        assertThat(limits.getMaxHeapSize()).hasValue(16 * MEGABYTE);
+        assertThat(limits.getMaxMetaspaceSize()).hasValue(32 * MEGABYTE);
+    }
+
+    @Test
+    public void automaticLimitsAreSet() {
+        ResourceLimits limits = ResourceLimits.automatic(2);
+
+        assertThat(limits.getMaxHeapSize()).isPresent();
+        assertThat(limits.getActiveProcessorCount().getAsInt())
+                .isLessThanOrEqualTo(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    @Test
+    public void childJvmIsLimited() {
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(ResourceReportingClass.class)
+                .withResourceLimits(new ResourceLimits.Builder()
+                        .withMaxHeapSize(64 * MEGABYTE)
+                        .withActiveProcessorCount(1)
+                        .build())
+                .isolate()) {
+            List<Object> results = isolate.results().collect(toList());
+            assertThat((Long) results.get(0)).isLessThanOrEqualTo(64 * MEGABYTE);
+            assertThat(results.get(1)).isEqualTo(1);
+            assertThat(isolate.waitFor()).isEqualTo(0);
+        }
+    }
+}
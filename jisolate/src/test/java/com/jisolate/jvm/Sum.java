@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.jvm;
+
+import java.io.Serializable;
+
+public class Sum implements Serializable {
+
+    public static class Operands implements Serializable {
+
+        private final int a;
+        private final int b;
+
+        Operands(int a, int b) {
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    private final Operands operands;
+    private final int value;
+
+    Sum(int a, int b) {
+        this.operands = new Operands(a, b);
+        this.value = a + b;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return operands.a + " + " + operands.b + " = " + value;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ConcurrentHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValues() {
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket < ConcurrentHistogram.getBucket(Long.MAX_VALUE); bucket++) {
+            long upperBound = ConcurrentHistogram.getBucketUpperBound(bucket);
+            assertThat(ConcurrentHistogram.getBucket(previousUpperBound + 1)).isEqualTo(bucket);
+            assertThat(ConcurrentHistogram.getBucket(upperBound)).isEqualTo(bucket);
+            previousUpperBound = upperBound;
+        }
+        assertThat(ConcurrentHistogram.getBucketUpperBound(ConcurrentHistogram.getBucket(Long.MAX_VALUE)))
+                .isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void statisticsAreRecorded() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i);
+
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMin()).isEqualTo(1);
+        assertThat(histogram.getMax()).isEqualTo(1000);
+        assertThat(histogram.getMean()).isEqualTo(500.5);
+        assertThat((double) histogram.getPercentile(0.5)).isCloseTo(500, within(500 * 0.125));
+        assertThat((double) histogram.getPercentile(0.99)).isCloseTo(990, within(990 * 0.125));
+        assertThat(histogram.getPercentile(1)).isEqualTo(1000);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+
+        assertThat(histogram.getMin()).isZero();
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getPercentile(0.5)).isZero();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.metrics;
+
+import com.jisolate.IsolatedClass;
+import com.jisolate.Jisolate;
+import com.jisolate.JisolateTest;
+import com.jisolate.jvm.JvmIsolate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JmxMetricsTest {
+
+    private MBeanServer mBeanServer;
+    private JmxMetrics metrics;
+
+    @Before
+    public void setUp() {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        metrics = new JmxMetrics(mBeanServer);
+        Metrics.set(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.set(NoOpMetrics.INSTANCE);
+        metrics.close();
+    }
+
+    @Test
+    public void metricsAreExposedAsMBeans() throws Exception {
+        metrics.timer("test.timer").record(1000);
+        metrics.timer("test.timer").record(3000);
+        metrics.counter("test.counter").add(5);
+        metrics.histogram("test.histogram").record(7);
+
+        assertThat(getAttribute("Timer", "test.timer", "Count")).isEqualTo(2L);
+        assertThat(getAttribute("Timer", "test.timer", "TotalTime")).isEqualTo(4000L);
+        assertThat(getAttribute("Timer", "test.timer", "Mean")).isEqualTo(2000.0);
+        assertThat(getAttribute("Counter", "test.counter", "Value")).isEqualTo(5L);
+        assertThat(getAttribute("Histogram", "test.histogram", "Max")).isEqualTo(7L);
+
+        metrics.close();
+        assertThat(mBeanServer.queryNames(null, null).stream()
+                .filter(n -> n.getDomain().equals(JmxMetrics.DOMAIN))).isEmpty();
+    }
+
+    @Test
+    public void classLoaderIsolationIsInstrumented() throws Exception {
+        Jisolate.classLoaderIsolation()
+                .withIsolatableClass(IsolatedClass.class)
+                .withIsolatableArguments(JisolateTest.FILE_CONTENTS)
+                .isolateAsync()
+                .get();
+
+        assertThat(getAttribute("Timer", Metrics.CLASS_LOADER_CREATION, "Count")).isEqualTo(1L);
+        assertThat(getAttribute("Timer", Metrics.INVOCATION, "Count")).isEqualTo(1L);
+        assertThat((Long) getAttribute("Timer", Metrics.CLASS_LOAD, "Count")).isPositive();
+        await().atMost(5, SECONDS).until(() ->
+                getAttribute("Histogram", Metrics.CLASSES_PER_CLASS_LOADER, "Count").equals(1L));
+        assertThat((Long) getAttribute("Histogram", Metrics.CLASSES_PER_CLASS_LOADER, "Max")).isPositive();
+        assertThat(getAttribute("Counter", Metrics.LIVE_CLASS_LOADER_ISOLATES, "Value")).isEqualTo(0L);
+    }
+
+    @Test
+    public void jvmIsolationIsInstrumented() throws Exception {
+        try (JvmIsolate isolate = Jisolate.jvmIsolation()
+                .withMainClass(com.jisolate.jvm.ResultPublishingClass.class)
+                .isolate()) {
+            isolate.events().findFirst();
+            assertThat(getAttribute("Counter", Metrics.LIVE_JVM_ISOLATES, "Value")).isEqualTo(1L);
+            assertThat(getAttribute("Timer", Metrics.JVM_SPAWN, "Count")).isEqualTo(1L);
+            isolate.waitFor();
+        }
+        await().atMost(5, SECONDS).until(() ->
+                getAttribute("Counter", Metrics.LIVE_JVM_ISOLATES, "Value").equals(0L));
+    }
+
+    private Object getAttribute(String type, String name, String attribute) throws Exception {
+        return mBeanServer.getAttribute(JmxMetrics.getObjectName(type, name), attribute);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.properties;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.Assert.assertEquals;
+
+public class ThreadLocalPropertiesTest {
+
+    private class PropertyVerification implements Runnable {
+
+        private final CountDownLatch propertiesAreIsolated;
+        private final CountDownLatch threadStarted;
+
+        private PropertyVerification(CountDownLatch threadStarted,
+                                     CountDownLatch propertiesAreIsolated) {
+            this.propertiesAreIsolated = propertiesAreIsolated;
+            this.threadStarted = threadStarted;
+        }
+
+        public void run() {
+            try {
+                ThreadLocalProperties.activate();
+
+                String propertyValue = "" + Thread.currentThread().getId();
+                System.setProperty(PROPERTY_NAME, propertyValue);
+                log.info("Setting system property {}={}", PROPERTY_NAME, propertyValue);
+
+                threadStarted.countDown();
+                long startTime = System.currentTimeMillis();
+                do {
+                    assertEquals(propertyValue, System.getProperty(PROPERTY_NAME));
+                    Thread.sleep(10);
+                } while (System.currentTimeMillis() - startTime < THREAD_RUN_TIME);
+                propertiesAreIsolated.countDown();
+            } catch (Exception e) {
+                throw new RuntimeException("Thread failed", e);
+            }
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadLocalPropertiesTest.class);
+
+    private final static String PROPERTY_NAME = "SystemPropertyIsolationTest."
+            + System.currentTimeMillis();
+
+    private static final long THREAD_RUN_TIME = 300;
+
+    @Test
+    public void multipleThreadsCanHaveDifferentValuesForSameIsolatedPropertyName()
+            throws InterruptedException {
+
+        // Set property in main test thread
+        System.setProperty(PROPERTY_NAME, "1");
+        assertEquals("1", System.getProperty(PROPERTY_NAME));
+
+        final CountDownLatch propertiesAreIsolated = new CountDownLatch(2);
+        final CountDownLatch threadsStarted = new CountDownLatch(2);
+
+        // Start threads which will assign new values to the property
+        new Thread(new PropertyVerification(threadsStarted, propertiesAreIsolated)).start();
+        new Thread(new PropertyVerification(threadsStarted, propertiesAreIsolated)).start();
+        threadsStarted.await(1000, TimeUnit.MILLISECONDS);
+
+        // Verify the original value remains unaffected whilst the threads are still running
+        assertEquals("1", System.getProperty(PROPERTY_NAME));
+        propertiesAreIsolated.await(1000, TimeUnit.MILLISECONDS);
+
+        // ...and after they terminate
+        assertEquals("1", System.getProperty(PROPERTY_NAME));
+    }
+
+    @Test
+    public void scopeOverlaysGlobalProperties() {
+        Properties global = new Properties();
+        global.setProperty("a", "1");
+        global.setProperty("b", "2");
+        ThreadLocalProperties properties = new ThreadLocalProperties(global);
+
+        ThreadLocalProperties.setScope(new PropertyScope());
+        try {
+            properties.setProperty("a", "scoped");
+            properties.setProperty("c", "3");
+            properties.remove("b");
+
+            assertThat(properties.getProperty("a")).isEqualTo("scoped");
+            assertThat(properties.getProperty("b", "default")).isEqualTo("default");
+            assertThat(properties.stringPropertyNames()).containsOnly("a", "c");
+            assertThat(properties.entrySet()).hasSize(2);
+            assertThat(properties).containsEntry("a", "scoped").containsEntry("c", "3").doesNotContainKey("b");
+        } finally {
+            ThreadLocalProperties.setScope(null);
+        }
+
+        assertThat(properties.getProperty("a")).isEqualTo("1");
+        assertThat(properties.stringPropertyNames()).containsOnly("a", "b");
+    }
+
+    @Test
+    public void scopeIsInheritedBySpawnedThreads() throws InterruptedException {
+        ThreadLocalProperties properties = new ThreadLocalProperties(new Properties());
+        AtomicReference<String> spawnedThreadValue = new AtomicReference<>();
+
+        ThreadLocalProperties.setScope(new PropertyScope());
+        try {
+            properties.setProperty("a", "scoped");
+            Thread thread = new Thread(() -> spawnedThreadValue.set(properties.getProperty("a")));
+            thread.start();
+            thread.join();
+        } finally {
+            ThreadLocalProperties.setScope(null);
+        }
+
+        assertThat(spawnedThreadValue.get()).isEqualTo("scoped");
+        assertThat(properties.getProperty("a")).isNull();
+    }
+
+    @Test
+    public void bulkChangesAreInvisibleToOtherScopes() {
+        Properties global = new Properties();
+        global.setProperty("a", "1");
+        global.setProperty("b", "2");
+        ThreadLocalProperties properties = new ThreadLocalProperties(global);
+        PropertyScope scope = new PropertyScope();
+        PropertyScope otherScope = new PropertyScope();
+
+        ThreadLocalProperties.setScope(scope);
+        try {
+            properties.putAll(singletonMap("c", "3"));
+            properties.merge("a", "x", (oldValue, value) -> oldValue + "" + value);
+            properties.computeIfAbsent("d", key -> "4");
+            properties.replaceAll((key, value) -> value + "!");
+            assertThat(properties).containsOnly(entry("a", "1x!"), entry("b", "2!"), entry("c", "3!"),
+                    entry("d", "4!"));
+
+            ThreadLocalProperties.setScope(otherScope);
+            assertThat(properties).containsOnly(entry("a", "1"), entry("b", "2"));
+            assertThat(properties.containsValue("3!")).isFalse();
+
+            ThreadLocalProperties.setScope(scope);
+            properties.clear();
+            assertThat(properties).isEmpty();
+            assertThat(properties.toString()).isEqualTo("{}");
+
+            ThreadLocalProperties.setScope(otherScope);
+            assertThat(properties).containsOnly(entry("a", "1"), entry("b", "2"));
+        } finally {
+            ThreadLocalProperties.setScope(null);
+        }
+
+        assertThat(properties).containsOnly(entry("a", "1"), entry("b", "2"));
+        assertThat(properties.clone()).isEqualTo(properties);
+    }
+
+    @Test
+    public void viewsAreReadOnly() {
+        Properties global = new Properties();
+        global.setProperty("a", "1");
+        ThreadLocalProperties properties = new ThreadLocalProperties(global);
+        assertThatThrownBy(() -> properties.keySet().remove("a")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> properties.entrySet().clear()).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> properties.values().remove("1")).isInstanceOf(UnsupportedOperationException.class);
+
+        ThreadLocalProperties.setScope(new PropertyScope());
+        try {
+            properties.setProperty("b", "2");
+            assertThatThrownBy(() -> properties.keySet().remove("a"))
+                    .isInstanceOf(UnsupportedOperationException.class);
+            assertThatThrownBy(() -> properties.entrySet().clear()).isInstanceOf(UnsupportedOperationException.class);
+            assertThatThrownBy(() -> properties.values().remove("2"))
+                    .isInstanceOf(UnsupportedOperationException.class);
+            assertThatThrownBy(() -> properties.stringPropertyNames().add("c"))
+                    .isInstanceOf(UnsupportedOperationException.class);
+        } finally {
+            ThreadLocalProperties.setScope(null);
+        }
+        assertThat(properties).containsOnly(entry("a", "1"));
+    }
+
+    @Test
+    public void scopedValuesKeepDuplicates() {
+        Properties global = new Properties();
+        global.setProperty("a", "1");
+        ThreadLocalProperties properties = new ThreadLocalProperties(global);
+
+        ThreadLocalProperties.setScope(new PropertyScope());
+        try {
+            properties.setProperty("b", "1");
+            assertThat(properties.values()).isNotInstanceOf(Set.class).containsExactly("1", "1");
+        } finally {
+            ThreadLocalProperties.setScope(null);
+        }
+    }
+
+    @Test
+    public void scopedStringPropertyNamesAreCachedUntilChanged() {
+        Properties global = new Properties();
+        global.setProperty("a", "1");
+        ThreadLocalProperties properties = new ThreadLocalProperties(global);
+
+        ThreadLocalProperties.setScope(new PropertyScope());
+        try {
+            properties.setProperty("b", "2");
+            Set<String> names = properties.stringPropertyNames();
+            assertThat(names).containsOnly("a", "b");
+            assertThat(properties.stringPropertyNames()).isSameAs(names);
+
+            properties.remove("a");
+            assertThat(properties.stringPropertyNames()).containsOnly("b");
+            assertThat(names).containsOnly("a", "b");
+        } finally {
+            ThreadLocalProperties.setScope(null);
+        }
+    }
+}
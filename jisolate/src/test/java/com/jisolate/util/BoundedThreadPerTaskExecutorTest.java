@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013-2018 Christian Gleissner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jisolate.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedThreadPerTaskExecutorTest {
+
+    // A cached thread pool stands in for the virtual thread-per-task executor, which needs Java 21
+    private final BoundedThreadPerTaskExecutor executor =
+            new BoundedThreadPerTaskExecutor(Executors.newCachedThreadPool(), 2);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void atMostParallelismTasksRunAtOnce() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                release.await();
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+
+        Thread.sleep(200);
+        assertThat(running.get()).isEqualTo(2);
+        release.countDown();
+        for (Future<?> future : futures)
+            future.get(10, TimeUnit.SECONDS);
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shutdownWaitsForSubmittedTasks() throws Exception {
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 4; i++)
+            executor.execute(completed::incrementAndGet);
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(completed.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void tasksInterruptedWhilstWaitingAreNotDropped() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++)
+            executor.execute(() -> {
+                started.countDown();
+                // Holds the permit until released, even once shutdownNow() has interrupted it
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Keeps waiting
+                    }
+                }
+            });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Boolean> supplied = CompletableFuture.supplyAsync(
+                () -> Thread.currentThread().isInterrupted(), executor);
+        Future<Boolean> submitted = executor.submit(() -> Thread.currentThread().isInterrupted());
+
+        Thread.sleep(200);
+        executor.shutdownNow();
+        Thread.sleep(200);
+        release.countDown();
+
+        assertThat(supplied.get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(submitted.get(10, TimeUnit.SECONDS)).isTrue();
+    }
+}